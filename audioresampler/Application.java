@@ -1,12 +1,30 @@
 package audioresampler;
 
-import java.io.File;
+import java.io.FileDescriptor;
 import java.io.FileNotFoundException;
+import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.PrintStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.UUID;
 
-import audioresampler.audio.AudioController;
+import javax.management.JMException;
+
+import audioresampler.audio.AudioProperties;
+import audioresampler.audio.AudioProperties.AudioFormat;
+import audioresampler.audio.ChannelMatrix;
+import audioresampler.audio.ConversionListener;
+import audioresampler.audio.ConversionMetrics;
 import audioresampler.audio.FastResamplingFilter;
+import audioresampler.audio.FilterException;
+import audioresampler.audio.GainFilter;
 import audioresampler.audio.HeaderFormatException;
+import audioresampler.audio.PolyphaseResamplingFilter;
+import audioresampler.audio.PolyphaseResamplingFilter.Quality;
+import audioresampler.audio.ResamplingFilter;
 import audioresampler.audio.UnsupportedFormatException;
 import audioresampler.audio.WaveController;
 import audioresampler.io.FileSink;
@@ -14,41 +32,183 @@ import audioresampler.io.FileSource;
 
 public class Application {
 
+	private static final String StandardStream = "-"; // File name of the standard input or output.
+	static final long DefaultCacheSize = 1L << 30; // Largest size of the output cache, in bytes, unless set by an option.
+
 	/**
 	 * Launch the application
-	 * @param args This parameter is ignored
+	 * @param args The conversion options and arguments, see the usage
 	 */
 	public static void main(String args[])
 	{
+		if(args.length > 0 && args[0].equals("-batch"))
+		{
+			BatchConverter.main(args);
+			return;
+		}
+
 		long startTime = System.currentTimeMillis();
+		ConversionOptions options = new ConversionOptions();
+		String cacheDirectory = null;
+		long cacheSize = DefaultCacheSize;
+		int argIndex = 0;
+
+		// Options precede the positional arguments.
+		for(; argIndex + 1 < args.length && args[argIndex].startsWith("-") && !args[argIndex].equals(StandardStream); argIndex += 2)
+		{
+			if(args[argIndex].equals("-j"))
+			{
+				options.parallelism = ParseCount(args[argIndex + 1]);
+
+				if(options.parallelism < 1)
+				{
+					System.err.println("Invalid Thread Count: " + args[argIndex + 1]);
+					return;
+				}
+			}
+			else if(args[argIndex].equals("-gain"))
+			{
+				try
+				{
+					options.gain = Double.parseDouble(args[argIndex + 1]);
+				}
+				catch (NumberFormatException e)
+				{
+					System.err.println("Invalid Gain: " + args[argIndex + 1]);
+					return;
+				}
+			}
+			else if(args[argIndex].equals("-chunks"))
+			{
+				if(!args[argIndex + 1].equals("copy") && !args[argIndex + 1].equals("drop"))
+				{
+					System.err.println("Invalid Chunk Option: " + args[argIndex + 1]);
+					return;
+				}
+
+				options.copyChunks = args[argIndex + 1].equals("copy");
+			}
+			else if(args[argIndex].equals("-channels"))
+			{
+				options.channels = args[argIndex + 1];
+
+				if(!options.channels.equals("mono") && !options.channels.equals("stereo") && !options.channels.matches("\\d+(,\\d+)*"))
+				{
+					System.err.println("Invalid Channels: " + options.channels);
+					return;
+				}
+			}
+			else if(args[argIndex].equals("-bits"))
+			{
+				options.outputFormat = args[argIndex + 1].equals("float") ? AudioFormat.WAVE_FLOAT : AudioFormat.WAVE_PCM;
+				options.outputBits = options.outputFormat == AudioFormat.WAVE_FLOAT ? 32 : ParseCount(args[argIndex + 1]);
+
+				if(options.outputFormat == AudioFormat.WAVE_PCM && (options.outputBits < 8 || options.outputBits > 24 || options.outputBits % 8 != 0))
+				{
+					System.err.println("Invalid Bit Depth: " + args[argIndex + 1]);
+					return;
+				}
+			}
+			else if(args[argIndex].equals("-dither"))
+			{
+				if(!args[argIndex + 1].equals("tpdf") && !args[argIndex + 1].equals("none"))
+				{
+					System.err.println("Invalid Dither Option: " + args[argIndex + 1]);
+					return;
+				}
+
+				options.dither = args[argIndex + 1].equals("tpdf");
+			}
+			else if(args[argIndex].equals("-range"))
+			{
+				options.range = ParseRange(args[argIndex + 1]);
+
+				if(options.range == null)
+				{
+					System.err.println("Invalid Range: " + args[argIndex + 1]);
+					return;
+				}
+			}
+			else if(args[argIndex].equals("-cache"))
+			{
+				cacheDirectory = args[argIndex + 1];
+			}
+			else if(args[argIndex].equals("-cachesize"))
+			{
+				cacheSize = ParseCount(args[argIndex + 1]) * (1L << 20);
+
+				if(cacheSize < 1)
+				{
+					System.err.println("Invalid Cache Size: " + args[argIndex + 1]);
+					return;
+				}
+			}
+			else
+			{
+				System.err.println("Invalid Option: " + args[argIndex]);
+				return;
+			}
+		}
+
+		if(options.range != null && options.gain != 0)
+		{
+			System.err.println("Ranges Cannot Be Combined With Gain");
+			return;
+		}
 
-		if(args.length < 3)
+		if(args.length - argIndex < 3)
 		{
-			System.err.println("Usage: AudioResampler <input> <output> <sample_rate>");
+			System.err.println("Usage: AudioResampler [-j <threads>] [-gain <decibels>] [-chunks copy|drop] [-channels mono|stereo|<list>] [-bits <8|16|24|float>] [-dither tpdf|none] [-range <start>:<end>] [-cache <directory>] [-cachesize <megabytes>] <input|-> <output|-> <sample_rate> [linear|low|medium|high]");
+			System.err.println("       AudioResampler -batch [-w <workers>] [-virtual] [-cache <directory>] [-cachesize <megabytes>] <directory|glob> <output_directory> <sample_rate> [linear|low|medium|high]");
+			System.err.println("       AudioResampler -batch [-w <workers>] [-virtual] [-cache <directory>] [-cachesize <megabytes>] <manifest>");
 			return;
 		}
 
-		String inputFileName = args[0];
-		String outputFileName = args[1];
-		int sampleRate = Integer.parseInt(args[2]);
+		String inputFileName = args[argIndex];
+		String outputFileName = args[argIndex + 1];
+		options.sampleRate = Integer.parseInt(args[argIndex + 2]);
+		options.quality = args.length > argIndex + 3 ? args[argIndex + 3] : "linear";
+
+		if(options.range != null && inputFileName.equals(StandardStream))
+		{
+			System.err.println("Ranges Cannot Be Read From Streams");
+			return;
+		}
 
 		try
 		{
-			File tempFile = File.createTempFile(outputFileName, null);
-			tempFile.deleteOnExit();
+			createFilter(options.sampleRate, options.quality);
+		}
+		catch (IllegalArgumentException e)
+		{
+			System.err.println("Invalid Quality: " + options.quality);
+			return;
+		}
 
-			FileSource input = new FileSource(inputFileName);
-			FileSink output = new FileSink(tempFile.getAbsolutePath());
+		// Messages go to the standard error when the output is written to the standard output.
+		boolean streamOutput = outputFileName.equals(StandardStream);
+		PrintStream messages = streamOutput ? System.err : System.out;
+		options.verbose = !streamOutput;
 
-			AudioController controller = new WaveController(input, output);
+		ConversionMetrics metrics = new ConversionMetrics();
+		RegisterMetrics(metrics);
 
-			controller.applyFilter(new FastResamplingFilter(sampleRate));
-			controller.saveToFile(outputFileName);
+		try
+		{
+			OutputCache cache = cacheDirectory != null ? new OutputCache(Paths.get(cacheDirectory), cacheSize) : null;
 
-			long processingTime = System.currentTimeMillis() - startTime;
+			convert(inputFileName, outputFileName, options, metrics, cache);
 
-			System.out.println(String.format("Done (%.2f seconds)", (double)processingTime / 1000));
+			long processingTime = System.currentTimeMillis() - startTime;
 
+			if(cache != null && cache.getHits() > 0)
+			{
+				messages.println(String.format("Done (%.2f seconds, from the output cache)", (double)processingTime / 1000));
+			}
+			else
+			{
+				messages.println(String.format("Done (%.2f seconds, %.1fx real time)", (double)processingTime / 1000, metrics.getRealTimeFactor()));
+			}
 		}
 		catch (FileNotFoundException e)
 		{
@@ -62,9 +222,240 @@ public class Application {
 		{
 			System.err.println("Unsupported Input: " + e);
 		}
+		catch (FilterException e)
+		{
+			System.err.println("Filter Processing Error: " + (e.getCause() != null ? e.getCause() : e.getMessage()));
+		}
 		catch (IOException e)
 		{
 			System.err.println("I/O Error: " + e);
 		}
 	}
+
+	/**
+	 * Convert a file to a sample rate, and apply the processing of the options.
+	 * The input or output is the standard input or output if its file name is "-", and is then streamed.
+	 * Output files are written to a temporary file next to them, which replaces them once the conversion is complete,
+	 * so the output can be the input, and failed conversions leave no output.
+	 * @param options The options of the conversion. A range can only be converted from a file, without gain.
+	 * @param listener Receives the measurements of the conversion.
+	 * @param cache The cache the output is copied from if the same conversion was done before, and added to otherwise,
+	 * or null. Conversions of ranges, of streams, and which copy chunks are not cached.
+	 * @return The duration of the input audio, in seconds.
+	 * @throws FilterException If the filter fails, in which case the output is incomplete and is not added to the cache.
+	 */
+	static double convert(String inputFileName, String outputFileName, ConversionOptions options, ConversionListener listener, OutputCache cache)
+			throws IOException, HeaderFormatException, UnsupportedFormatException
+	{
+		ResamplingFilter filter = createFilter(options.sampleRate, options.quality);
+		FileSource input = inputFileName.equals(StandardStream) ? new FileSource(System.in) : new FileSource(inputFileName);
+		Path outputPath = outputFileName.equals(StandardStream) ? null : Paths.get(outputFileName);
+		Path temporaryPath = outputPath != null ? GetTemporaryPath(outputPath) : null;
+		FileSink output;
+
+		try
+		{
+			output = outputPath == null ? new FileSink(new FileOutputStream(FileDescriptor.out)) : new FileSink(temporaryPath.toString());
+		}
+		catch (FileNotFoundException e)
+		{
+			input.close();
+			throw e;
+		}
+
+		WaveController controller = null;
+		boolean completed = false;
+
+		try
+		{
+			try
+			{
+				controller = new WaveController(input, output);
+			}
+			catch (HeaderFormatException e)
+			{
+				throw new HeaderFormatException(inputFileName, e);
+			}
+			catch (UnsupportedFormatException e)
+			{
+				throw new UnsupportedFormatException(inputFileName, e);
+			}
+
+			AudioProperties properties = controller.getProperties();
+
+			if(properties.Format != AudioFormat.WAVE_PCM && properties.Format != AudioFormat.WAVE_FLOAT)
+			{
+				throw new UnsupportedFormatException(inputFileName);
+			}
+
+			// Prepare the filter for the input, so that conversions it does not support fail before any output is written.
+			try
+			{
+				if(options.channels != null)
+				{
+					filter.setChannelMatrix(ChannelMatrix.Parse(options.channels, properties.NumChannels));
+				}
+
+				filter.setOutputFormat(options.outputFormat, options.outputBits);
+				filter.setInputProperties(properties);
+			}
+			catch (IllegalArgumentException e)
+			{
+				throw new UnsupportedFormatException(inputFileName + ": " + e.getMessage());
+			}
+
+			filter.setDither(options.dither);
+			controller.setParallelism(options.parallelism);
+			controller.setCopyChunks(options.copyChunks);
+
+			String cacheKey = null;
+
+			// Conversions of the same data with the same parameters have the same output, whatever the other chunks of the input.
+			if(cache != null && options.range == null && !options.copyChunks && input.isSeekable())
+			{
+				cacheKey = cache.getKey(input, controller.getDataOffset(), properties, options.getCacheParameters());
+
+				if(cache.copyTo(cacheKey, output))
+				{
+					controller.close();
+					Files.move(temporaryPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
+					completed = true;
+
+					return (double) properties.DataSize / properties.getFrameSize() / properties.SampleRate;
+				}
+			}
+
+			if(options.range != null)
+			{
+				controller.setRange(Math.round(options.range[0] * properties.SampleRate),
+						Double.isInfinite(options.range[1]) ? Long.MAX_VALUE : Math.round(options.range[1] * properties.SampleRate));
+			}
+			controller.setVerbose(options.verbose);
+			controller.setListener(listener);
+
+			if(options.gain != 0)
+			{
+				controller.applyFilters(filter, new GainFilter(options.gain));
+			}
+			else
+			{
+				controller.applyFilter(filter);
+			}
+
+			controller.saveToFile(outputFileName);
+			completed = true;
+
+			// Failed conversions throw before this point, so only complete outputs are added to the cache.
+			if(cacheKey != null && output.isSeekable())
+			{
+				cache.put(cacheKey, Paths.get(outputFileName));
+			}
+
+			// The size of streams of unknown length and of ranges is that of the output.
+			if(properties.DataSize == 0 || options.range != null)
+			{
+				properties = controller.getProperties();
+			}
+
+			return (double) properties.DataSize / properties.getFrameSize() / properties.SampleRate;
+		}
+		finally
+		{
+			if(controller != null)
+			{
+				controller.close();
+			}
+			else
+			{
+				input.close();
+				output.close();
+			}
+
+			// Failed conversions leave no output, and the output they would have replaced is kept.
+			if(!completed && temporaryPath != null)
+			{
+				temporaryPath.toFile().delete();
+			}
+		}
+	}
+
+	/**
+	 * Get the path of a temporary file next to the output, to which its data is written until the conversion is complete,
+	 * when the file is moved to the output. The output is then only replaced by complete conversions,
+	 * and can be the input, which is read until the conversion is complete.
+	 */
+	static Path GetTemporaryPath(Path outputPath)
+	{
+		return outputPath.resolveSibling(outputPath.getFileName() + "." + UUID.randomUUID() + ".tmp");
+	}
+
+	/**
+	 * Create the resampling filter for a quality name.
+	 * The linear quality uses the fast linear filter, and other qualities use the polyphase filter.
+	 */
+	static ResamplingFilter createFilter(int sampleRate, String quality)
+	{
+		if(quality.equalsIgnoreCase("linear"))
+		{
+			return new FastResamplingFilter(sampleRate);
+		}
+
+		return new PolyphaseResamplingFilter(sampleRate, Quality.valueOf(quality.toUpperCase()));
+	}
+
+	/**
+	 * Make metrics available through JMX, for monitoring tools attached to the process.
+	 */
+	static void RegisterMetrics(ConversionMetrics metrics)
+	{
+		try
+		{
+			metrics.register();
+		}
+		catch (JMException e)
+		{
+			System.err.println("Metrics Registration Error: " + e);
+		}
+	}
+
+	/**
+	 * Parse a range of seconds given as "start:end", where the end can be left out for the end of the input,
+	 * or return null if it is not a valid range.
+	 */
+	static double[] ParseRange(String value)
+	{
+		int separator = value.indexOf(':');
+
+		if(separator < 0)
+		{
+			return null;
+		}
+
+		try
+		{
+			double start = Double.parseDouble(value.substring(0, separator));
+			double end = separator + 1 < value.length() ? Double.parseDouble(value.substring(separator + 1)) : Double.POSITIVE_INFINITY;
+
+			return start >= 0 && end >= start ? new double[] { start, end } : null;
+		}
+		catch (NumberFormatException e)
+		{
+			return null;
+		}
+	}
+
+	/**
+	 * Parse a positive count given as an option, or return 0 if it is not a number.
+	 */
+	static int ParseCount(String value)
+	{
+		try
+		{
+			return Integer.parseInt(value);
+		}
+		catch (NumberFormatException e)
+		{
+			return 0;
+		}
+	}
 }
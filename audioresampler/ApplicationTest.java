@@ -1,18 +1,35 @@
 package audioresampler;
 
+import static org.junit.Assert.assertArrayEquals;
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import static org.junit.Assert.fail;
 
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileNotFoundException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
 
 import org.junit.Test;
 
 import audioresampler.audio.AudioController;
 import audioresampler.audio.AudioFilter;
+import audioresampler.audio.ConversionMetrics;
 import audioresampler.audio.FastResamplingFilter;
+import audioresampler.audio.FilterException;
 import audioresampler.audio.HeaderFormatException;
+import audioresampler.audio.PolyphaseResamplingFilter;
+import audioresampler.audio.PolyphaseResamplingFilter.Quality;
 import audioresampler.audio.ResamplingFilter;
+import audioresampler.audio.SampleBlock;
 import audioresampler.audio.UnsupportedFormatException;
 import audioresampler.audio.WaveController;
 import audioresampler.io.FileSink;
@@ -38,6 +55,465 @@ public class ApplicationTest
 		test(new FastResamplingFilter(96000), 5147260, 11204920);
 	}
 
+	@Test
+	public void testPolyphaseDownsampling()
+	{
+		test(new PolyphaseResamplingFilter(8000, Quality.MEDIUM), 5147260, 933744);
+	}
+
+	@Test
+	public void testPolyphaseUpsampling()
+	{
+		test(new PolyphaseResamplingFilter(96000, Quality.LOW), 5147260, 11204920);
+	}
+
+	@Test
+	public void testParallelResampling() throws Exception
+	{
+		assertArrayEquals(resample(new FastResamplingFilter(96000), 1), resample(new FastResamplingFilter(96000), 4));
+		assertArrayEquals(resample(new PolyphaseResamplingFilter(8000), 1), resample(new PolyphaseResamplingFilter(8000), 4));
+	}
+
+	@Test
+	public void testStreaming() throws Exception
+	{
+		// Streamed output is the same as the file output, with sizes known in advance from the input,
+		// and input of unknown size is read to its end.
+		byte[] input = Files.readAllBytes(new File("media/App1Test1Stereo16bits.wav").toPath());
+		byte[] expected = resample(new FastResamplingFilter(22050), 1);
+
+		assertArrayEquals(expected, stream(input, new FastResamplingFilter(22050)));
+
+		Arrays.fill(input, 40, 44, (byte) 0xff);
+		byte[] output = stream(input, new FastResamplingFilter(22050));
+
+		assertEquals(expected.length, output.length);
+		assertArrayEquals(Arrays.copyOfRange(expected, 44, expected.length), Arrays.copyOfRange(output, 44, output.length));
+	}
+
+	@Test
+	public void testChunkIndex() throws Exception
+	{
+		// Chunks are found in any order, and metadata chunks of odd size are copied after the data with their padding bytes.
+		final String InputFileName = "test_chunks_in.wav";
+		final String OutputFileName = "test_chunks_out.wav";
+
+		new File(InputFileName).deleteOnExit();
+		new File(OutputFileName).deleteOnExit();
+
+		byte[] original = Files.readAllBytes(new File("media/App1Test1Stereo16bits.wav").toPath());
+		byte[] list = { 'L', 'I', 'S', 'T', 5, 0, 0, 0, 'I', 'N', 'F', 'O', '!', 0 };
+		byte[] ixml = { 'i', 'X', 'M', 'L', 3, 0, 0, 0, '<', '/', '>', 0 };
+		byte[] cue = { 'c', 'u', 'e', ' ', 4, 0, 0, 0, 0, 0, 0, 0 };
+
+		// RIFF, then LIST, data, fmt, cue and iXML.
+		ByteArrayOutputStream input = new ByteArrayOutputStream();
+		input.write(original, 0, 12);
+		input.write(list);
+		input.write(original, 36, original.length - 36);
+		input.write(original, 12, 24);
+		input.write(cue);
+		input.write(ixml);
+
+		byte[] chunked = input.toByteArray();
+		chunked[4] = (byte) (chunked.length - 8);
+		chunked[5] = (byte) ((chunked.length - 8) >> 8);
+		chunked[6] = (byte) ((chunked.length - 8) >> 16);
+		chunked[7] = (byte) ((chunked.length - 8) >> 24);
+		Files.write(new File(InputFileName).toPath(), chunked);
+
+		byte[] expected = resample(new FastResamplingFilter(22050), 1);
+
+		for(boolean copyChunks : new boolean[] { false, true })
+		{
+			WaveController controller = new WaveController(new FileSource(InputFileName), new FileSink(OutputFileName));
+			controller.setCopyChunks(copyChunks);
+			controller.applyFilter(new FastResamplingFilter(22050));
+			controller.saveToFile(OutputFileName);
+			controller.close();
+
+			byte[] output = Files.readAllBytes(new File(OutputFileName).toPath());
+
+			if(!copyChunks)
+			{
+				assertArrayEquals(expected, output);
+				continue;
+			}
+
+			int chunksSize = list.length + ixml.length;
+
+			assertEquals(expected.length + chunksSize, output.length);
+			assertEquals(expected.length + chunksSize - 8, ByteBuffer.wrap(output, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt());
+			assertArrayEquals(Arrays.copyOfRange(expected, 8, expected.length), Arrays.copyOfRange(output, 8, expected.length));
+			assertArrayEquals(list, Arrays.copyOfRange(output, expected.length, expected.length + list.length));
+			assertArrayEquals(ixml, Arrays.copyOfRange(output, expected.length + list.length, output.length));
+		}
+	}
+
+	@Test
+	public void testRange() throws Exception
+	{
+		// Ranges are the output frames of the whole input from the first at or after the start of the range,
+		// to the first at or after its end, or to the end of the output.
+		assertRange(new FastResamplingFilter(22050), 44101, 88200, 22051, 44100);
+		assertRange(new FastResamplingFilter(22050), 1200000, Long.MAX_VALUE, 600000, -1);
+		assertRange(new PolyphaseResamplingFilter(48000, Quality.LOW), 44101, 88200, 48002, 96000);
+	}
+
+	@Test
+	public void testFilterFailure() throws Exception
+	{
+		// Exceptions of the filter fail the conversion, whether the data is filtered in order or in parallel.
+		for(int parallelism : new int[] { 1, 4 })
+		{
+			FastResamplingFilter filter = new FastResamplingFilter(8000)
+			{
+				@Override
+				public void process(SampleBlock input, SampleBlock output)
+				{
+					throw new IllegalStateException();
+				}
+
+				@Override
+				public void processFrames(ByteBuffer input, long inputFrame, long inputFrameCount,
+						long outputFrame, int frameCount, byte[] output, int outputOffset)
+				{
+					throw new IllegalStateException();
+				}
+			};
+
+			try
+			{
+				resample(filter, parallelism);
+				fail("Filter Failure");
+			}
+			catch (FilterException e)
+			{
+				assertTrue(e.getCause() instanceof IllegalStateException);
+			}
+		}
+	}
+
+	@Test
+	public void testUnsupportedRatio() throws Exception
+	{
+		// Ratios which need too many phases for a polyphase kernel are rejected before any output is written.
+		try
+		{
+			Application.convert("media/App1Test1Stereo16bits.wav", "test_ratio_out.wav", new ConversionOptions(44101, "medium"), new ConversionMetrics(), null);
+			fail("Unsupported Ratio");
+		}
+		catch (UnsupportedFormatException e)
+		{
+			assertTrue(e.getMessage().contains("44101"));
+		}
+
+		// Failed conversions leave no output, nor temporary file.
+		assertEquals(0, new File(".").list((directory, name) -> name.startsWith("test_ratio_out.wav")).length);
+	}
+
+	@Test
+	public void testInvalidInput() throws Exception
+	{
+		// Files which are not WAVE files are reported as invalid, and leave no output.
+		final String InputFileName = "test_invalid_in.wav";
+
+		new File(InputFileName).deleteOnExit();
+		Files.write(new File(InputFileName).toPath(), "not a WAVE file".getBytes());
+
+		try
+		{
+			Application.convert(InputFileName, "test_invalid_out.wav", new ConversionOptions(8000, "linear"), new ConversionMetrics(), null);
+			fail("Invalid Input");
+		}
+		catch (HeaderFormatException e)
+		{
+			assertTrue(e.getMessage().contains(InputFileName));
+		}
+
+		assertEquals(0, new File(".").list((directory, name) -> name.startsWith("test_invalid_out.wav")).length);
+	}
+
+	@Test
+	public void testSameInputAndOutput() throws Exception
+	{
+		// The output replaces the input once it is converted.
+		final String FileName = "test_same.wav";
+
+		new File(FileName).deleteOnExit();
+		Files.copy(new File("media/App1Test1Stereo16bits.wav").toPath(), new File(FileName).toPath(), StandardCopyOption.REPLACE_EXISTING);
+
+		Application.convert(FileName, FileName, new ConversionOptions(8000, "linear"), new ConversionMetrics(), null);
+
+		assertArrayEquals(resample(new FastResamplingFilter(8000), 1), Files.readAllBytes(new File(FileName).toPath()));
+	}
+
+	@Test
+	public void testLargeData() throws Exception
+	{
+		// Data chunks of 2 GiB or more keep their size, and their end is resampled from its position.
+		// The input is a sparse file, so its silent data takes no space.
+		final String InputFileName = "test_large_in.wav";
+		final String OutputFileName = "test_large_out.wav";
+		final long DataSize = 0x90000000L;
+
+		new File(InputFileName).deleteOnExit();
+		new File(OutputFileName).deleteOnExit();
+
+		byte[] header = Arrays.copyOf(Files.readAllBytes(new File("media/App1Test1Stereo16bits.wav").toPath()), 44);
+		ByteBuffer.wrap(header).order(ByteOrder.LITTLE_ENDIAN).putInt(4, (int) (DataSize + 36)).putInt(40, (int) DataSize);
+
+		try(RandomAccessFile file = new RandomAccessFile(InputFileName, "rw"))
+		{
+			file.write(header);
+			file.setLength(44 + DataSize);
+		}
+
+		FastResamplingFilter filter = new FastResamplingFilter(22050);
+		long inputFrameCount = DataSize / 4;
+
+		WaveController controller = new WaveController(new FileSource(InputFileName), new FileSink(OutputFileName));
+
+		assertEquals(DataSize, controller.getProperties().DataSize);
+
+		controller.setRange(inputFrameCount - 44100, Long.MAX_VALUE);
+		controller.applyFilter(filter);
+		controller.saveToFile(OutputFileName);
+		controller.close();
+
+		byte[] output = Files.readAllBytes(new File(OutputFileName).toPath());
+		long expectedSize = (filter.getOutputFrameCount(inputFrameCount) - (inputFrameCount - 44100) / 2) * 4;
+
+		assertEquals(44 + expectedSize, output.length);
+		assertEquals(expectedSize, ByteBuffer.wrap(output, 40, 4).order(ByteOrder.LITTLE_ENDIAN).getInt());
+	}
+
+	@Test
+	public void testLargeCopiedChunks() throws Exception
+	{
+		// Copied chunks of 2 GiB or more are counted in the RIFF chunk size.
+		// The input is a sparse file, so its empty chunk takes no space.
+		final String InputFileName = "test_large_chunks_in.wav";
+		final String OutputFileName = "test_large_chunks_out.wav";
+		final long ChunkSize = 0x80000000L;
+
+		new File(InputFileName).deleteOnExit();
+		new File(OutputFileName).deleteOnExit();
+
+		byte[] input = Files.readAllBytes(new File("media/App1Test1Stereo16bits.wav").toPath());
+		int dataSize = ByteBuffer.wrap(input, 40, 4).order(ByteOrder.LITTLE_ENDIAN).getInt();
+		long riffSize = 36 + dataSize + (dataSize & 1) + 8 + ChunkSize;
+
+		ByteBuffer.wrap(input).order(ByteOrder.LITTLE_ENDIAN).putInt(4, (int) riffSize);
+		byte[] chunkHeader = ByteBuffer.allocate(8).order(ByteOrder.LITTLE_ENDIAN).put("LIST".getBytes()).putInt((int) ChunkSize).array();
+
+		try(RandomAccessFile file = new RandomAccessFile(InputFileName, "rw"))
+		{
+			file.setLength(8 + riffSize);
+			file.write(input, 0, 44 + dataSize);
+			file.seek(44 + dataSize + (dataSize & 1));
+			file.write(chunkHeader);
+		}
+
+		WaveController controller = new WaveController(new FileSource(InputFileName), new FileSink(OutputFileName));
+		controller.setCopyChunks(true);
+		controller.applyFilter(new FastResamplingFilter(44100));
+		controller.saveToFile(OutputFileName);
+		controller.close();
+
+		try(RandomAccessFile file = new RandomAccessFile(OutputFileName, "r"))
+		{
+			byte[] header = new byte[44];
+			file.readFully(header);
+
+			assertEquals(8 + riffSize, file.length());
+			assertEquals(riffSize, ByteBuffer.wrap(header, 4, 4).order(ByteOrder.LITTLE_ENDIAN).getInt() & 0xffffffffL);
+		}
+	}
+
+	@Test
+	public void testOutputCache() throws Exception
+	{
+		// The same conversion is copied from the cache, and the least recently used output is evicted beyond the size bound.
+		final String InputFileName = "media/App1Test1Stereo16bits.wav";
+		final String OutputFileName = "test_cache_out.wav";
+
+		File directory = Files.createTempDirectory("test_cache").toFile();
+		directory.deleteOnExit();
+		new File(OutputFileName).deleteOnExit();
+
+		OutputCache cache = new OutputCache(directory.toPath(), 2000000);
+		ConversionMetrics metrics = new ConversionMetrics();
+
+		Application.convert(InputFileName, OutputFileName, new ConversionOptions(8000, "linear"), metrics, cache);
+		byte[] expected = Files.readAllBytes(new File(OutputFileName).toPath());
+
+		assertEquals(1, directory.listFiles().length);
+
+		// Entries are named by the digest and the length of the data, and have the permissions of new files in the directory.
+		Path entry = directory.listFiles()[0].toPath();
+		assertTrue(entry.getFileName().toString().matches("[0-9a-f]{64}_[0-9a-f]+_.*"));
+
+		if(entry.getFileSystem().supportedFileAttributeViews().contains("posix"))
+		{
+			Path newFile = Files.createFile(directory.toPath().resolve("test_cache_permissions"));
+			assertEquals(Files.getPosixFilePermissions(newFile), Files.getPosixFilePermissions(entry));
+			Files.delete(newFile);
+		}
+
+		// The number of threads does not change the output, so it is not part of the key.
+		ConversionOptions options = new ConversionOptions(8000, "LINEAR");
+		options.parallelism = 4;
+		Application.convert(InputFileName, OutputFileName, options, metrics, cache);
+
+		assertArrayEquals(expected, Files.readAllBytes(new File(OutputFileName).toPath()));
+		assertEquals(1, metrics.getConversions());
+		assertEquals(1, cache.getHits());
+		assertEquals(1, cache.getMisses());
+
+		Application.convert(InputFileName, OutputFileName, new ConversionOptions(11025, "linear"), metrics, cache);
+
+		assertEquals(1, cache.getEvictions());
+		assertEquals(1.0 / 3, cache.getHitRate(), 1e-9);
+
+		for(File file : directory.listFiles())
+		{
+			assertEquals(new File(OutputFileName).length(), file.length());
+			file.delete();
+		}
+	}
+
+	@Test
+	public void testMetrics() throws Exception
+	{
+		// The input frames of parallel blocks, which overlap, are only counted once.
+		for(int parallelism : new int[] { 1, 4 })
+		{
+			final String OutputFileName = "test_metrics_out.wav";
+
+			new File(OutputFileName).deleteOnExit();
+
+			ConversionMetrics metrics = new ConversionMetrics();
+			AudioController controller = new WaveController(new FileSource("media/App1Test1Stereo16bits.wav"), new FileSink(OutputFileName));
+			controller.setParallelism(parallelism);
+			controller.setListener(metrics);
+			controller.applyFilter(new FastResamplingFilter(8000));
+			controller.saveToFile(OutputFileName);
+			controller.close();
+
+			assertEquals(1, metrics.getConversions());
+			assertEquals(5147260 / 4, metrics.getInputFrames());
+			assertEquals(933744 / 4, metrics.getOutputFrames());
+			assertEquals(5147260, metrics.getBytesRead());
+			assertEquals(933744, metrics.getBytesWritten());
+			assertEquals(0, metrics.getIOErrors());
+			assertTrue(metrics.getRealTimeFactor() > 0);
+		}
+	}
+
+	@Test
+	public void testBatchConversion() throws Exception
+	{
+		// Files which fail to convert leave no output.
+		final String OutputFileName = "test_batch_out.wav";
+		final String InvalidFileName = "test_batch_invalid.wav";
+
+		new File(OutputFileName).deleteOnExit();
+		new File(InvalidFileName).deleteOnExit();
+		Files.write(new File(InvalidFileName).toPath(), new byte[100]);
+
+		BatchConverter converter = new BatchConverter(2, false);
+		converter.run(Arrays.asList(
+				new BatchConverter.Entry("media/App1Test1Stereo16bits.wav", OutputFileName, 8000, "low"),
+				new BatchConverter.Entry("media/Missing.wav", "test_batch_missing.wav", 8000, "low"),
+				new BatchConverter.Entry(InvalidFileName, "test_batch_invalid_out.wav", 8000, "low")));
+
+		assertEquals(1, converter.getConvertedCount());
+		assertEquals(2, converter.getFailedCount());
+		assertEquals(933744 + 44, new File(OutputFileName).length());
+		assertEquals(0, new File(".").list((directory, name) -> name.startsWith("test_batch_missing.wav") || name.startsWith("test_batch_invalid_out.wav")).length);
+	}
+
+	@Test
+	public void testBatchOutputPaths() throws Exception
+	{
+		// Files of the same name in different directories matched by a recursive pattern keep their directories in the output.
+		File directory = Files.createTempDirectory("test_batch").toFile();
+		File input = new File(directory, "in");
+		File output = new File(directory, "out");
+
+		for(String name : new String[] { "a/x.wav", "b/x.wav", "x.wav" })
+		{
+			File file = new File(input, name);
+			file.getParentFile().mkdirs();
+			file.createNewFile();
+		}
+
+		List<BatchConverter.Entry> entries = BatchConverter.ListFiles(input + "/**.wav", output.toPath(), 8000, "low");
+
+		assertEquals(3, entries.size());
+		assertEquals(new File(output, "a/x.wav").toString(), entries.get(0).outputFileName);
+		assertEquals(new File(output, "b/x.wav").toString(), entries.get(1).outputFileName);
+		assertEquals(new File(output, "x.wav").toString(), entries.get(2).outputFileName);
+		assertTrue(new File(output, "a").isDirectory());
+		assertTrue(new File(output, "b").isDirectory());
+
+		for(String name : new String[] { "in/a/x.wav", "in/b/x.wav", "in/x.wav", "in/a", "in/b", "in", "out/a", "out/b", "out", "" })
+		{
+			new File(directory, name).delete();
+		}
+	}
+
+	private byte[] resample(AudioFilter filter, int parallelism) throws Exception
+	{
+		final String OutputFileName = "test_parallel_out.wav";
+
+		File outputFile = new File(OutputFileName);
+		outputFile.deleteOnExit();
+
+		AudioController controller = new WaveController(new FileSource("media/App1Test1Stereo16bits.wav"), new FileSink(OutputFileName));
+		controller.setParallelism(parallelism);
+		controller.applyFilter(filter);
+		controller.saveToFile(OutputFileName);
+		controller.close();
+
+		return Files.readAllBytes(outputFile.toPath());
+	}
+
+	// Compares the range of input frames resampled on its own to the output frames of the whole input, up to its end if the end frame is negative.
+	private void assertRange(AudioFilter filter, long firstFrame, long endFrame, int firstOutputFrame, int endOutputFrame) throws Exception
+	{
+		final String OutputFileName = "test_range_out.wav";
+
+		File outputFile = new File(OutputFileName);
+		outputFile.deleteOnExit();
+
+		byte[] expected = resample(filter, 1);
+
+		WaveController controller = new WaveController(new FileSource("media/App1Test1Stereo16bits.wav"), new FileSink(OutputFileName));
+		controller.setRange(firstFrame, endFrame);
+		controller.applyFilter(filter);
+		controller.saveToFile(OutputFileName);
+		controller.close();
+
+		byte[] output = Files.readAllBytes(outputFile.toPath());
+		int end = endOutputFrame < 0 ? expected.length : 44 + endOutputFrame * 4;
+
+		assertArrayEquals(Arrays.copyOfRange(expected, 44 + firstOutputFrame * 4, end), Arrays.copyOfRange(output, 44, output.length));
+	}
+
+	private byte[] stream(byte[] input, AudioFilter filter) throws Exception
+	{
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+
+		AudioController controller = new WaveController(new FileSource(new ByteArrayInputStream(input)), new FileSink(output));
+		controller.applyFilter(filter);
+		controller.saveToFile(null);
+		controller.close();
+
+		return output.toByteArray();
+	}
+
 	private void test(AudioFilter filter, int expectedInputSize, int expectedOutputSize)
 	{
 		try
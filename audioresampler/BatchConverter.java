@@ -0,0 +1,413 @@
+package audioresampler;
+
+import java.io.IOException;
+import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.PathMatcher;
+import java.nio.file.Paths;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import audioresampler.audio.ConversionMetrics;
+
+/**
+ * Converts a batch of files in a single process, with a bounded number of conversions
+ * running or queued at once. A file which fails to convert is reported without
+ * interrupting the rest of the batch, and a summary is printed once all files are done.
+ *
+ * The files are listed by a directory, a glob pattern or a manifest, which has one
+ * conversion per line: {@code <input> <output> <sample_rate> [quality]}.
+ * Empty lines and lines starting with {@code #} are ignored.
+ *
+ * The measurements of all conversions are recorded by shared {@link ConversionMetrics},
+ * and conversions can share an {@link OutputCache}, so that files converted before are copied.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public class BatchConverter
+{
+	/**
+	 * A conversion of one file.
+	 */
+	public static class Entry
+	{
+		final String inputFileName;
+		final String outputFileName;
+		final int sampleRate;
+		final String quality;
+
+		public Entry(String inputFileName, String outputFileName, int sampleRate, String quality)
+		{
+			this.inputFileName = inputFileName;
+			this.outputFileName = outputFileName;
+			this.sampleRate = sampleRate;
+			this.quality = quality;
+		}
+	}
+
+	private final int workers;
+	private final boolean virtualThreads;
+	private final ConversionMetrics metrics = new ConversionMetrics();
+	private OutputCache cache;
+
+	private int converted;
+	private int failed;
+	private double audioSeconds;
+
+	/**
+	 * @param workers The number of files converted at once.
+	 * @param virtualThreads Whether conversions run on virtual threads, when the runtime supports them.
+	 */
+	public BatchConverter(int workers, boolean virtualThreads)
+	{
+		if(workers < 1)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.workers = workers;
+		this.virtualThreads = virtualThreads;
+	}
+
+	/**
+	 * Launch a batch conversion from the command line arguments, starting with -batch.
+	 */
+	public static void main(String args[])
+	{
+		int workers = Runtime.getRuntime().availableProcessors();
+		boolean virtualThreads = false;
+		String cacheDirectory = null;
+		long cacheSize = Application.DefaultCacheSize;
+		int argIndex = 1;
+
+		// Options precede the positional arguments.
+		for(; argIndex < args.length && args[argIndex].startsWith("-"); argIndex++)
+		{
+			if(args[argIndex].equals("-w") && argIndex + 1 < args.length)
+			{
+				workers = Application.ParseCount(args[++argIndex]);
+
+				if(workers < 1)
+				{
+					System.err.println("Invalid Worker Count: " + args[argIndex]);
+					return;
+				}
+			}
+			else if(args[argIndex].equals("-virtual"))
+			{
+				virtualThreads = true;
+			}
+			else if(args[argIndex].equals("-cache") && argIndex + 1 < args.length)
+			{
+				cacheDirectory = args[++argIndex];
+			}
+			else if(args[argIndex].equals("-cachesize") && argIndex + 1 < args.length)
+			{
+				cacheSize = Application.ParseCount(args[++argIndex]) * (1L << 20);
+
+				if(cacheSize < 1)
+				{
+					System.err.println("Invalid Cache Size: " + args[argIndex]);
+					return;
+				}
+			}
+			else
+			{
+				System.err.println("Invalid Option: " + args[argIndex]);
+				return;
+			}
+		}
+
+		List<Entry> entries;
+
+		try
+		{
+			int argCount = args.length - argIndex;
+
+			if(argCount == 1)
+			{
+				entries = ReadManifest(Paths.get(args[argIndex]));
+			}
+			else if(argCount == 3 || argCount == 4)
+			{
+				String quality = argCount == 4 ? args[argIndex + 3] : "linear";
+
+				entries = ListFiles(args[argIndex], Paths.get(args[argIndex + 1]), Integer.parseInt(args[argIndex + 2]), quality);
+			}
+			else
+			{
+				System.err.println("Usage: AudioResampler -batch [-w <workers>] [-virtual] [-cache <directory>] [-cachesize <megabytes>] <directory|glob> <output_directory> <sample_rate> [linear|low|medium|high]");
+				System.err.println("       AudioResampler -batch [-w <workers>] [-virtual] [-cache <directory>] [-cachesize <megabytes>] <manifest>");
+				return;
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			System.err.println("Invalid Sample Rate: " + e.getMessage());
+			return;
+		}
+		catch (IOException e)
+		{
+			System.err.println("File Access Error: " + e);
+			return;
+		}
+
+		BatchConverter converter = new BatchConverter(workers, virtualThreads);
+		Application.RegisterMetrics(converter.getMetrics());
+
+		if(cacheDirectory != null)
+		{
+			try
+			{
+				converter.setCache(new OutputCache(Paths.get(cacheDirectory), cacheSize));
+			}
+			catch (IOException e)
+			{
+				System.err.println("File Access Error: " + e);
+				return;
+			}
+		}
+
+		converter.run(entries);
+	}
+
+	/**
+	 * Convert all of the entries, and print a summary of the batch.
+	 */
+	public void run(List<Entry> entries)
+	{
+		long startTime = System.nanoTime();
+
+		// Platform threads take tasks from a bounded queue, and virtual threads are created per task.
+		// The number of tasks submitted and not yet done is bounded for both, so the queue is never full.
+		ExecutorService executor = virtualThreads ? CreateVirtualThreadExecutor() : null;
+		int queueSize = workers * 2;
+		final Semaphore pending = new Semaphore(executor != null ? workers : queueSize);
+
+		if(executor == null)
+		{
+			if(virtualThreads)
+			{
+				System.err.println("Virtual threads are not supported by this runtime, using platform threads");
+			}
+
+			executor = new ThreadPoolExecutor(workers, workers, 0, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize));
+		}
+
+		try
+		{
+			for(final Entry entry : entries)
+			{
+				pending.acquireUninterruptibly();
+
+				executor.execute(new Runnable()
+				{
+					@Override
+					public void run()
+					{
+						try
+						{
+							convert(entry);
+						}
+						finally
+						{
+							pending.release();
+						}
+					}
+				});
+			}
+		}
+		finally
+		{
+			executor.shutdown();
+		}
+
+		try
+		{
+			executor.awaitTermination(Long.MAX_VALUE, TimeUnit.MILLISECONDS);
+		}
+		catch (InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+
+		double wallSeconds = (System.nanoTime() - startTime) / 1e9;
+
+		synchronized(this)
+		{
+			System.out.println(String.format("Converted %d of %d files, %d failed (%.2f seconds)", converted, entries.size(), failed, wallSeconds));
+			System.out.println(String.format("Throughput: %.2f audio seconds per second", audioSeconds / wallSeconds));
+			System.out.println("Metrics: " + metrics);
+
+			if(cache != null)
+			{
+				System.out.println(cache);
+			}
+		}
+	}
+
+	public synchronized int getConvertedCount()
+	{
+		return converted;
+	}
+
+	public synchronized int getFailedCount()
+	{
+		return failed;
+	}
+
+	/**
+	 * Set the cache shared by the conversions, or null for none.
+	 */
+	public void setCache(OutputCache cache)
+	{
+		this.cache = cache;
+	}
+
+	public ConversionMetrics getMetrics()
+	{
+		return metrics;
+	}
+
+	// Conversions print a single line each, as they run concurrently.
+	private void convert(Entry entry)
+	{
+		long startTime = System.nanoTime();
+
+		try
+		{
+			if(Paths.get(entry.inputFileName).toAbsolutePath().normalize().equals(Paths.get(entry.outputFileName).toAbsolutePath().normalize()))
+			{
+				throw new IOException("Output would overwrite the input");
+			}
+
+			double duration = Application.convert(entry.inputFileName, entry.outputFileName, new ConversionOptions(entry.sampleRate, entry.quality), metrics, cache);
+			double processingTime = (System.nanoTime() - startTime) / 1e9;
+
+			synchronized(this)
+			{
+				converted++;
+				audioSeconds += duration;
+			}
+
+			System.out.println(String.format("Converted %s (%.2f seconds)", entry.inputFileName, processingTime));
+		}
+		catch (Exception e)
+		{
+			// Report the failure and continue with the batch, whatever went wrong with this file.
+			synchronized(this)
+			{
+				failed++;
+			}
+
+			System.err.println("Failed " + entry.inputFileName + ": " + e);
+		}
+	}
+
+	/**
+	 * List the WAVE files in a directory, or the files matching a glob pattern,
+	 * to be converted to files of the same name in the output directory.
+	 * Files in subdirectories of the directory which precedes the first wildcard of the pattern
+	 * are converted to the same subdirectories of the output directory, which are created,
+	 * so that files of the same name in different directories do not overwrite each other.
+	 */
+	static List<Entry> ListFiles(String pattern, Path outputDirectory, int sampleRate, String quality) throws IOException
+	{
+		final PathMatcher matcher;
+		Path baseDirectory;
+		int depth;
+
+		if(Files.isDirectory(Paths.get(pattern)))
+		{
+			baseDirectory = Paths.get(pattern);
+			matcher = FileSystems.getDefault().getPathMatcher("glob:*.{wav,WAV}");
+			depth = 1;
+		}
+		else
+		{
+			// Walk the files under the directories which precede the first wildcard of the pattern.
+			int separator = pattern.replaceAll("[*?\\[{].*$", "").lastIndexOf('/');
+
+			baseDirectory = Paths.get(separator > 0 ? pattern.substring(0, separator) : separator == 0 ? "/" : ".");
+			matcher = FileSystems.getDefault().getPathMatcher("glob:" + (separator >= 0 ? pattern : "./" + pattern));
+			depth = Integer.MAX_VALUE;
+		}
+
+		Files.createDirectories(outputDirectory);
+
+		List<Entry> entries = new ArrayList<Entry>();
+		List<Path> files;
+
+		try(Stream<Path> paths = Files.walk(baseDirectory, depth))
+		{
+			files = paths.filter(path -> Files.isRegularFile(path)
+					&& (depth == 1 ? matcher.matches(path.getFileName()) : matcher.matches(path)))
+				.sorted()
+				.collect(Collectors.toList());
+		}
+
+		for(Path file : files)
+		{
+			Path outputFile = outputDirectory.resolve(baseDirectory.relativize(file));
+			Files.createDirectories(outputFile.getParent());
+
+			entries.add(new Entry(file.toString(), outputFile.toString(), sampleRate, quality));
+		}
+
+		return entries;
+	}
+
+	/**
+	 * Read the conversions listed in a manifest.
+	 */
+	static List<Entry> ReadManifest(Path manifest) throws IOException
+	{
+		List<Entry> entries = new ArrayList<Entry>();
+
+		for(String line : Files.readAllLines(manifest, StandardCharsets.UTF_8))
+		{
+			line = line.trim();
+
+			if(line.isEmpty() || line.startsWith("#"))
+			{
+				continue;
+			}
+
+			String[] fields = line.split("\\s+");
+
+			if(fields.length < 3 || fields.length > 4)
+			{
+				throw new IOException("Invalid Manifest Line: " + line);
+			}
+
+			entries.add(new Entry(fields[0], fields[1], Integer.parseInt(fields[2]), fields.length == 4 ? fields[3] : "linear"));
+		}
+
+		return entries;
+	}
+
+	// Virtual threads are only available from Java 21, so they are created by reflection.
+	private static ExecutorService CreateVirtualThreadExecutor()
+	{
+		try
+		{
+			Method factory = java.util.concurrent.Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+
+			return (ExecutorService) factory.invoke(null);
+		}
+		catch (ReflectiveOperationException e)
+		{
+			return null;
+		}
+	}
+}
@@ -0,0 +1,43 @@
+package audioresampler;
+
+import audioresampler.audio.AudioProperties.AudioFormat;
+
+/**
+ * The options of a conversion: the sample rate and quality of the output,
+ * and the processing applied on the way, which is left out by default.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+final class ConversionOptions
+{
+	int sampleRate; // Sample rate of the output.
+	String quality = "linear"; // Name of the quality, linear for the fast linear filter or that of a polyphase quality.
+	String channels; // Output channels, as "mono" or "stereo" for a downmix or as a list of input channels, or null to keep the input channels.
+	AudioFormat outputFormat; // Sample format of the output, or null to keep that of the input.
+	int outputBits; // Bit depth of the output, if its format is set.
+	boolean dither; // Whether TPDF dither is added to samples which lose resolution in the output format.
+	double gain; // Gain in decibels, applied if it is not 0.
+	double[] range; // Start and end of the range of the input to convert in seconds, or null for the whole input. Only from files, without gain.
+	int parallelism = 1; // Number of threads filtering the data.
+	boolean copyChunks; // Whether the metadata chunks of the input are copied to the output.
+	boolean verbose; // Whether the progress of the conversion is printed.
+
+	ConversionOptions()
+	{
+	}
+
+	ConversionOptions(int sampleRate, String quality)
+	{
+		this.sampleRate = sampleRate;
+		this.quality = quality;
+	}
+
+	// O(1)
+	// Get the options which change the output of the same input data, which are part of the key of cached outputs.
+	// Ranges and copied chunks are not cached, and the number of threads does not change the output.
+	String getCacheParameters()
+	{
+		return sampleRate + "_" + quality.toLowerCase() + "_" + gain + "_" + (outputFormat != null ? outputFormat + "_" + outputBits : "input")
+				+ "_" + (dither ? "tpdf" : "none") + "_" + (channels != null ? channels : "all");
+	}
+}
@@ -0,0 +1,274 @@
+package audioresampler;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.nio.file.attribute.FileTime;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HexFormat;
+import java.util.List;
+import java.util.Map;
+import java.util.UUID;
+
+import audioresampler.audio.AudioProperties;
+import audioresampler.io.FileSink;
+import audioresampler.io.FileSource;
+
+/**
+ * A size-bounded cache of converted files in a directory, shared by the processes using it,
+ * so that converting the same input data with the same parameters again copies the
+ * previous output instead of resampling.
+ *
+ * Entries are named by a key made of a hash of the input data and the parameters of the conversion,
+ * which include the format of the input, so the output is the same for inputs whose data is the same
+ * whatever their file name or other chunks. The data is hashed with SHA-256, so that different inputs
+ * do not share an entry, and its length.
+ *
+ * Entries are published atomically, by moving a complete temporary file to the name of the entry,
+ * so readers never see a partial entry. The modification time of an entry is updated when it is used,
+ * and the least recently used entries are removed once the total size exceeds the bound.
+ * The numbers of hits, misses and evictions are counted for this process.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public final class OutputCache
+{
+	private static final String EntrySuffix = ".wav";
+	private static final String TemporarySuffix = ".tmp";
+	private static final int HashViewSize = 1 << 24; // Largest view of the input data hashed at once.
+
+	private final Path directory;
+	private final long maxSize;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * @param directory The directory of the entries, which is created if it does not exist.
+	 * @param maxSize The largest total size of the entries, in bytes. Entries beyond it are evicted at once.
+	 * @throws IOException If the directory cannot be created or listed.
+	 */
+	public OutputCache(Path directory, long maxSize) throws IOException
+	{
+		if(maxSize < 0)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.directory = directory;
+		this.maxSize = maxSize;
+
+		Files.createDirectories(directory);
+		evict();
+	}
+
+	// O(n)
+	/**
+	 * Get the key of the conversion of the data of a file, which is read without moving the read position of the source.
+	 *
+	 * @param source The input file.
+	 * @param dataOffset The offset of the data in the file.
+	 * @param properties The properties of the input, with the size of its data.
+	 * @param parameters The parameters of the conversion, such as the sample rate and quality, which must not contain a path separator.
+	 * @throws IOException If the file cannot be read.
+	 */
+	public String getKey(FileSource source, long dataOffset, AudioProperties properties, String parameters) throws IOException
+	{
+		MessageDigest digest;
+
+		try
+		{
+			digest = MessageDigest.getInstance("SHA-256");
+		}
+		catch (NoSuchAlgorithmException e)
+		{
+			// Every Java platform supports SHA-256.
+			throw new IllegalStateException(e);
+		}
+
+		long dataLength = Math.min(properties.DataSize, source.getSize() - dataOffset);
+
+		for(long position = 0; position < dataLength; position += HashViewSize)
+		{
+			ByteBuffer view = source.getView(dataOffset + position, (int) Math.min(HashViewSize, dataLength - position));
+
+			digest.update(view);
+		}
+
+		return String.format("%s_%x_%s_%d_%d_%d_%s", HexFormat.of().formatHex(digest.digest()), dataLength, properties.Format,
+				properties.NumChannels, properties.BitsPerSample, properties.SampleRate, parameters);
+	}
+
+	// O(n)
+	/**
+	 * Copy the output of a conversion to a sink if it is in the cache, and mark it as recently used.
+	 *
+	 * @return Whether the output was in the cache.
+	 * @throws IOException If the entry cannot be read, or the sink written.
+	 */
+	public boolean copyTo(String key, FileSink sink) throws IOException
+	{
+		Path entry = directory.resolve(key + EntrySuffix);
+		FileSource source;
+
+		try
+		{
+			Files.setLastModifiedTime(entry, FileTime.fromMillis(System.currentTimeMillis()));
+			source = new FileSource(entry.toString());
+		}
+		catch (IOException e)
+		{
+			// The entry does not exist, or was evicted since it was found.
+			synchronized(this)
+			{
+				misses++;
+			}
+
+			return false;
+		}
+
+		try
+		{
+			sink.transferFrom(source, 0, source.getSize());
+		}
+		finally
+		{
+			source.close();
+		}
+
+		synchronized(this)
+		{
+			hits++;
+		}
+
+		return true;
+	}
+
+	// O(n + e), for e entries
+	/**
+	 * Add the output of a conversion to the cache, and evict the least recently used entries beyond the size bound.
+	 *
+	 * @param key The key of the conversion.
+	 * @param output The converted file, which is copied.
+	 * @throws IOException If the entry cannot be written.
+	 */
+	public void put(String key, Path output) throws IOException
+	{
+		// The temporary file is created with the default permissions of new files,
+		// unlike those of Files.createTempFile which other users cannot read.
+		Path temporary = directory.resolve(key + "." + UUID.randomUUID() + TemporarySuffix);
+
+		try
+		{
+			FileSource source = new FileSource(output.toString());
+
+			try(FileChannel channel = FileChannel.open(temporary, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE))
+			{
+				source.transferTo(0, source.getSize(), channel);
+			}
+			finally
+			{
+				source.close();
+			}
+
+			Files.move(temporary, directory.resolve(key + EntrySuffix), StandardCopyOption.ATOMIC_MOVE, StandardCopyOption.REPLACE_EXISTING);
+		}
+		finally
+		{
+			Files.deleteIfExists(temporary);
+		}
+
+		evict();
+	}
+
+	// O(e log e), for e entries
+	// Removes the least recently used entries until their total size is within the bound.
+	// Other processes can remove the same entries at once, in which case they are not counted.
+	private void evict() throws IOException
+	{
+		final Map<Path, BasicFileAttributes> entries = new HashMap<Path, BasicFileAttributes>();
+		long size = 0;
+
+		try(DirectoryStream<Path> paths = Files.newDirectoryStream(directory, "*" + EntrySuffix))
+		{
+			for(Path path : paths)
+			{
+				try
+				{
+					BasicFileAttributes attributes = Files.readAttributes(path, BasicFileAttributes.class);
+
+					entries.put(path, attributes);
+					size += attributes.size();
+				}
+				catch (NoSuchFileException e)
+				{
+					// The entry was evicted since it was listed.
+				}
+			}
+		}
+
+		if(size <= maxSize)
+		{
+			return;
+		}
+
+		List<Path> leastRecentlyUsed = new ArrayList<Path>(entries.keySet());
+		leastRecentlyUsed.sort(Comparator.comparing(path -> entries.get(path).lastModifiedTime()));
+
+		for(int i = 0; i < leastRecentlyUsed.size() && size > maxSize; i++)
+		{
+			Path path = leastRecentlyUsed.get(i);
+
+			if(Files.deleteIfExists(path))
+			{
+				synchronized(this)
+				{
+					evictions++;
+				}
+			}
+
+			size -= entries.get(path).size();
+		}
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	/**
+	 * Get the fraction of lookups which were hits, or 0 if there was none.
+	 */
+	public synchronized double getHitRate()
+	{
+		return hits + misses > 0 ? (double) hits / (hits + misses) : 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("Output Cache: %d hits, %d misses (%.1f%% hit rate), %d evictions",
+				hits, misses, getHitRate() * 100, evictions);
+	}
+}
@@ -1,5 +1,7 @@
 package audioresampler.audio;
 
+import java.io.IOException;
+
 import audioresampler.io.FileSink;
 import audioresampler.io.FileSource;
 
@@ -8,8 +10,16 @@ public abstract class AudioController
 	protected FileSource fileSource;
 	protected FileSink fileSink;
 	protected AudioProperties properties;
+	protected int parallelism = 1;
+	protected boolean verbose = true;
+	protected ConversionListener listener = new ConversionListener() {};
 
-	public AudioController(FileSource source, FileSink sink)
+	/**
+	 * @throws IOException If the header of the source cannot be read.
+	 * @throws HeaderFormatException If the header of the source is not valid.
+	 * @throws UnsupportedFormatException If the format of the source is not supported.
+	 */
+	public AudioController(FileSource source, FileSink sink) throws IOException, HeaderFormatException, UnsupportedFormatException
 	{
 		if(source == null || sink == null)
 		{
@@ -28,11 +38,72 @@ public abstract class AudioController
 		return properties.copy();
 	}
 
-	protected abstract void initializeProperties();
+	/**
+	 * Set the number of threads used to apply filters which support random access.
+	 */
+	public void setParallelism(int parallelism)
+	{
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.parallelism = parallelism;
+	}
+
+	/**
+	 * Set the listener which receives the measurements of filters as they are applied.
+	 */
+	public void setListener(ConversionListener listener)
+	{
+		if(listener == null)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.listener = listener;
+	}
+
+	/**
+	 * Set whether the progress of filters is printed to the standard output.
+	 */
+	public void setVerbose(boolean verbose)
+	{
+		this.verbose = verbose;
+	}
 
-	public abstract void applyFilter(AudioFilter filter);
+	protected void printProgress(String text)
+	{
+		if(verbose)
+		{
+			System.out.print(text);
+		}
+	}
+
+	protected abstract void initializeProperties() throws IOException, HeaderFormatException, UnsupportedFormatException;
+
+	/**
+	 * Filter the source data and write it to the sink.
+	 * @throws FilterException If the filter fails or cannot be applied to the data, in which case the output is incomplete.
+	 * @throws IOException If the data cannot be read or written.
+	 */
+	public abstract void applyFilter(AudioFilter filter) throws IOException;
+
+	/**
+	 * Filter the source data with filters applied in order, in a single pass, and write it to the sink.
+	 * @throws FilterException If a filter fails or cannot be applied to the data, in which case the output is incomplete.
+	 * @throws IOException If the data cannot be read or written.
+	 */
+	public void applyFilters(AudioFilter... filters) throws IOException
+	{
+		applyFilter(filters.length == 1 ? filters[0] : new FilterChain(filters));
+	}
 
-	public abstract void saveToFile(String outputFilePath);
+	/**
+	 * Complete the data written to the sink and save it to a file.
+	 * If the path is that of the sink, the file is completed in place.
+	 */
+	public abstract void saveToFile(String outputFilePath) throws IOException;
 
 	public void close()
 	{
@@ -1,5 +1,7 @@
 package audioresampler.audio;
 
+import java.nio.ByteBuffer;
+
 /**
  * Represents a filter able to accept input audio data,
  * performs deterministic processing on it, and returns the output.
@@ -11,6 +13,8 @@ public abstract class AudioFilter
 	AudioProperties properties;
 	AudioProperties outProperties;
 
+	final SampleBlockPool blockPool = new SampleBlockPool(4); // Blocks used temporarily to process bytes through blocks.
+
 	public AudioFilter()
 	{
 		properties = new AudioProperties();
@@ -23,6 +27,52 @@ public abstract class AudioFilter
 	 */
 	public abstract byte[] process(byte[] input);
 
+	/**
+	 * Filter the input data from the position to the limit of a buffer,
+	 * such as a view of a memory mapped file.
+	 * By default, the data is copied to an array and filtered by {@link #process(byte[])},
+	 * filters should override this to read the buffer in place.
+	 */
+	public byte[] process(ByteBuffer input)
+	{
+		byte[] data = new byte[input.remaining()];
+		input.duplicate().get(data);
+
+		return process(data);
+	}
+
+	/**
+	 * Filter the frames of an input block, replacing the frames of the output block.
+	 * An empty input block marks the end of the input, as an empty array for {@link #process(byte[])}.
+	 * By default, the input frames are encoded and filtered by {@link #process(byte[])}, and its output is decoded,
+	 * filters should override this to process samples directly.
+	 */
+	public void process(SampleBlock input, SampleBlock output)
+	{
+		byte[] data = process(input.encode(properties));
+
+		output.decode(ByteBuffer.wrap(data), outProperties);
+	}
+
+	// O(n)
+	// Filters bytes by decoding them to a block, and encoding the output block,
+	// for filters which process blocks natively. Trailing bytes which do not form a whole frame are ignored.
+	final byte[] processAsBlock(ByteBuffer input)
+	{
+		SampleBlock inputBlock = blockPool.acquire(properties.NumChannels, 0);
+		SampleBlock outputBlock = blockPool.acquire(getOutputProperties().NumChannels, 0);
+
+		inputBlock.decode(input, properties);
+		process(inputBlock, outputBlock);
+
+		byte[] output = outputBlock.encode(getOutputProperties());
+
+		blockPool.release(inputBlock);
+		blockPool.release(outputBlock);
+
+		return output;
+	}
+
 	public void setInputProperties(AudioProperties properties)
 	{
 		this.properties = properties;
@@ -13,16 +13,25 @@ public class AudioProperties
 	public static enum AudioFormat
 	{
 		NONE,
-		WAVE_PCM
+		WAVE_PCM,
+		WAVE_FLOAT // IEEE floating point samples, whose nominal range is [-1, 1].
 	};
 
 	public short NumChannels;
 	public int SampleRate;
 	public short BitsPerSample;
-	public int DataSize;
+	public long DataSize;
 	public ByteOrder ByteOrder;
 	public AudioFormat Format;
 
+	/**
+	 * Get whether the samples are floating point values rather than integers.
+	 */
+	public boolean isFloatingPoint()
+	{
+		return Format == AudioFormat.WAVE_FLOAT;
+	}
+
 	public int getChannelSize()
 	{
 		return (BitsPerSample / 8);
@@ -12,6 +12,10 @@ import java.nio.ByteOrder;
  */
 final class ByteHelper
 {
+	/**
+	 * @deprecated Allocates for each value, use {@link PcmCodec} instead.
+	 */
+	@Deprecated
 	public static int GetIntFromBytes(byte[] data, ByteOrder byteOrder)
 	{
 		if(data == null || data.length == 0)
@@ -51,6 +55,52 @@ final class ByteHelper
 		return data & 0xff;
 	}
 
+	/**
+	 * Read a sample from its position in a buffer, without allocating.
+	 * 8-bit samples are unsigned, wider samples are signed.
+	 */
+	public static int GetSampleFromBuffer(ByteBuffer buffer, int position, int bitsPerSample)
+	{
+		if(bitsPerSample <= 8)
+		{
+			return buffer.get(position) & 0xff;
+		}
+		else if(bitsPerSample <= 16)
+		{
+			return buffer.getShort(position);
+		}
+		else if(bitsPerSample <= 24)
+		{
+			// Bytes are sign extended and must be masked when packed into the integer.
+			if(buffer.order() == ByteOrder.LITTLE_ENDIAN)
+			{
+				return buffer.get(position + 2) << 16 | (buffer.get(position + 1) & 0xff) << 8 | (buffer.get(position) & 0xff);
+			}
+
+			return buffer.get(position) << 16 | (buffer.get(position + 1) & 0xff) << 8 | (buffer.get(position + 2) & 0xff);
+		}
+
+		// Assuming 32-bit signed integers.
+		return buffer.getInt(position);
+	}
+
+	/**
+	 * Write the low bytes of a sample at a position in an array, without allocating.
+	 */
+	public static void PutSampleBytes(byte[] data, int position, int sample, ByteOrder byteOrder, int byteCount)
+	{
+		boolean littleEndian = byteOrder == ByteOrder.LITTLE_ENDIAN;
+
+		for(int i = 0; i < byteCount; i++)
+		{
+			data[position + (littleEndian ? i : byteCount - 1 - i)] = (byte) (sample >> (i * 8));
+		}
+	}
+
+	/**
+	 * @deprecated Allocates for each value, use {@link PcmCodec} instead.
+	 */
+	@Deprecated
 	public static byte[] GetNumberBytes(int data, ByteOrder byteOrder, int byteCount)
 	{
 		byte[] dataBytes = new byte[byteCount];
@@ -63,6 +113,10 @@ final class ByteHelper
 		return dataBytes;
 	}
 
+	/**
+	 * @deprecated Allocates for each value, use {@link PcmCodec} instead.
+	 */
+	@Deprecated
 	public static byte[] GetIntBytes(int data, ByteOrder byteOrder)
 	{
 		ByteBuffer buffer = ByteBuffer.allocate(Integer.BYTES);
@@ -71,6 +125,10 @@ final class ByteHelper
 	    return buffer.array();
 	}
 
+	/**
+	 * @deprecated Allocates for each value, use {@link PcmCodec} instead.
+	 */
+	@Deprecated
 	public static byte[] GetShortBytes(short data, ByteOrder byteOrder)
 	{
 		ByteBuffer buffer = ByteBuffer.allocate(Short.BYTES);
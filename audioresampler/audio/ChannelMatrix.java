@@ -0,0 +1,275 @@
+package audioresampler.audio;
+
+import java.util.Arrays;
+
+/**
+ * A matrix of gains which maps the channels of the input to the channels of the output,
+ * to downmix, select or reorder channels. Each output sample is the sum of the input samples
+ * of the same frame multiplied by the gains of their channels.
+ *
+ * Resampling filters mix the channels as they decode the input, so that only the output channels
+ * are resampled, for instance one channel instead of six for a downmix of 5.1 audio to mono.
+ * Channels are in the order of the WAVE format: front left, front right, front center, low frequency,
+ * then back and side channels.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public final class ChannelMatrix
+{
+	private static final float CenterGain = (float) Math.sqrt(0.5); // Gain of the center and surround channels in a downmix, -3 dB.
+
+	private final float[][] gains; // Gains of the input channels for each output channel.
+
+	/**
+	 * @param gains The gains of the input channels, for each output channel.
+	 * Each output channel must have a gain for every input channel.
+	 */
+	public ChannelMatrix(float[][] gains)
+	{
+		if(gains.length == 0 || gains[0].length == 0)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.gains = new float[gains.length][];
+
+		for(int channel = 0; channel < gains.length; channel++)
+		{
+			if(gains[channel].length != gains[0].length)
+			{
+				throw new IllegalArgumentException();
+			}
+
+			this.gains[channel] = gains[channel].clone();
+		}
+	}
+
+	/**
+	 * Get a matrix which outputs some channels of the input, in the given order.
+	 * Channels can be repeated.
+	 *
+	 * @param inputChannels The number of input channels.
+	 * @param channels The index of the input channel of each output channel, from 0.
+	 */
+	public static ChannelMatrix Select(int inputChannels, int... channels)
+	{
+		float[][] gains = new float[channels.length][inputChannels];
+
+		for(int channel = 0; channel < channels.length; channel++)
+		{
+			if(channels[channel] < 0 || channels[channel] >= inputChannels)
+			{
+				throw new IllegalArgumentException("Channel " + channels[channel] + " of " + inputChannels);
+			}
+
+			gains[channel][channels[channel]] = 1;
+		}
+
+		return new ChannelMatrix(gains);
+	}
+
+	/**
+	 * Get a matrix which downmixes the input to mono or stereo.
+	 * Stereo is downmixed to mono by averaging its channels, and mono is copied to both stereo channels.
+	 * 5.1 and 7.1 audio are downmixed with the center and surround channels at -3 dB and without the low frequency channel,
+	 * and other layouts to mono by averaging their channels. Gains are normalized so that their sum for each output channel
+	 * is at most 1, so the downmix does not clip.
+	 *
+	 * @param inputChannels The number of input channels.
+	 * @param outputChannels The number of output channels, 1 or 2.
+	 */
+	public static ChannelMatrix Downmix(int inputChannels, int outputChannels)
+	{
+		if(inputChannels < 1 || outputChannels < 1 || outputChannels > 2)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		float[][] gains = new float[outputChannels][inputChannels];
+
+		if(inputChannels <= 2)
+		{
+			// Average stereo to mono, or copy mono to each channel.
+			if(outputChannels == 2)
+			{
+				return Select(inputChannels, 0, inputChannels - 1);
+			}
+
+			Arrays.fill(gains[0], 1f / inputChannels);
+
+			return new ChannelMatrix(gains);
+		}
+
+		if(inputChannels == 6 || inputChannels == 8)
+		{
+			// Front left and right, center, low frequency, then pairs of back and side channels.
+			for(int channel = 0; channel < outputChannels; channel++)
+			{
+				for(int input = 0; input < inputChannels; input++)
+				{
+					boolean left = input % 2 == 0;
+
+					if(input == 2)
+					{
+						gains[channel][input] = CenterGain;
+					}
+					else if(input != 3 && (outputChannels == 1 || left == (channel == 0)))
+					{
+						gains[channel][input] = input < 2 ? 1 : CenterGain;
+					}
+				}
+			}
+		}
+		else if(outputChannels == 1)
+		{
+			Arrays.fill(gains[0], 1);
+		}
+		else
+		{
+			throw new IllegalArgumentException("No stereo downmix of " + inputChannels + " channels");
+		}
+
+		for(float[] channelGains : gains)
+		{
+			float sum = 0;
+
+			for(float gain : channelGains)
+			{
+				sum += gain;
+			}
+
+			for(int input = 0; input < inputChannels; input++)
+			{
+				channelGains[input] /= sum;
+			}
+		}
+
+		return new ChannelMatrix(gains);
+	}
+
+	/**
+	 * Parse a channel matrix given as "mono" or "stereo" for a downmix,
+	 * or as a list of input channels separated by commas, such as "1,0" to swap stereo channels.
+	 *
+	 * @param inputChannels The number of input channels.
+	 * @throws IllegalArgumentException If the matrix is invalid, or does not apply to the number of input channels.
+	 */
+	public static ChannelMatrix Parse(String specification, int inputChannels)
+	{
+		if(specification.equals("mono"))
+		{
+			return Downmix(inputChannels, 1);
+		}
+		else if(specification.equals("stereo"))
+		{
+			return Downmix(inputChannels, 2);
+		}
+
+		String[] values = specification.split(",", -1);
+		int[] channels = new int[values.length];
+
+		try
+		{
+			for(int i = 0; i < values.length; i++)
+			{
+				channels[i] = Integer.parseInt(values[i].trim());
+			}
+		}
+		catch (NumberFormatException e)
+		{
+			throw new IllegalArgumentException(specification, e);
+		}
+
+		return Select(inputChannels, channels);
+	}
+
+	public int getInputChannels()
+	{
+		return gains[0].length;
+	}
+
+	public int getOutputChannels()
+	{
+		return gains.length;
+	}
+
+	public float getGain(int outputChannel, int inputChannel)
+	{
+		return gains[outputChannel][inputChannel];
+	}
+
+	// O(n)
+	/**
+	 * Mix frames of the input channels from a frame offset to the output channels from a frame offset.
+	 * Channels with a gain of 1 are copied, and channels with a gain of 0 are not read.
+	 */
+	public void mix(float[][] input, int inputOffset, int frameCount, float[][] output, int outputOffset)
+	{
+		for(int channel = 0; channel < gains.length; channel++)
+		{
+			float[] outputSamples = output[channel];
+			boolean mixed = false;
+
+			for(int inputChannel = 0; inputChannel < gains[channel].length; inputChannel++)
+			{
+				float gain = gains[channel][inputChannel];
+				float[] samples = input[inputChannel];
+
+				if(gain == 0)
+				{
+					continue;
+				}
+
+				if(!mixed && gain == 1)
+				{
+					System.arraycopy(samples, inputOffset, outputSamples, outputOffset, frameCount);
+				}
+				else if(!mixed)
+				{
+					for(int frame = 0; frame < frameCount; frame++)
+					{
+						outputSamples[outputOffset + frame] = samples[inputOffset + frame] * gain;
+					}
+				}
+				else
+				{
+					for(int frame = 0; frame < frameCount; frame++)
+					{
+						outputSamples[outputOffset + frame] += samples[inputOffset + frame] * gain;
+					}
+				}
+
+				mixed = true;
+			}
+
+			if(!mixed)
+			{
+				Arrays.fill(outputSamples, outputOffset, outputOffset + frameCount, 0);
+			}
+		}
+	}
+
+	// O(n)
+	/**
+	 * Mix the frames of an input block, with a channel per input channel of the matrix,
+	 * replacing the frames of the output block.
+	 */
+	public void mix(SampleBlock input, SampleBlock output)
+	{
+		if(input.getNumChannels() != getInputChannels())
+		{
+			throw new IllegalArgumentException();
+		}
+
+		output.reserve(gains.length, input.getFrameCount());
+		output.setFrameCount(input.getFrameCount());
+
+		mix(input.getChannels(), 0, input.getFrameCount(), output.getChannels(), 0);
+	}
+
+	@Override
+	public String toString()
+	{
+		return Arrays.deepToString(gains);
+	}
+}
@@ -0,0 +1,105 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import audioresampler.audio.AudioProperties.AudioFormat;
+
+public class ChannelMatrixTest
+{
+	@Test
+	public void testDownmix()
+	{
+		// Downmixes of 5.1 drop the low frequency channel, and the gains of each output channel sum to 1.
+		ChannelMatrix mono = ChannelMatrix.Downmix(6, 1);
+		ChannelMatrix stereo = ChannelMatrix.Downmix(6, 2);
+
+		assertEquals(1, mono.getOutputChannels());
+		assertEquals(0, mono.getGain(0, 3), 0);
+		assertEquals(mono.getGain(0, 0) * Math.sqrt(0.5), mono.getGain(0, 2), 1e-6);
+		assertEquals(0, stereo.getGain(0, 1), 0);
+		assertEquals(0, stereo.getGain(1, 4), 0);
+
+		for(ChannelMatrix matrix : new ChannelMatrix[] { mono, stereo, ChannelMatrix.Downmix(2, 1), ChannelMatrix.Downmix(3, 1) })
+		{
+			for(int channel = 0; channel < matrix.getOutputChannels(); channel++)
+			{
+				float sum = 0;
+
+				for(int input = 0; input < matrix.getInputChannels(); input++)
+				{
+					sum += matrix.getGain(channel, input);
+				}
+
+				assertEquals(1, sum, 1e-6);
+			}
+		}
+
+		assertEquals(1, ChannelMatrix.Parse("1,0", 2).getGain(0, 1), 0);
+	}
+
+	@Test
+	public void testResampling()
+	{
+		// Resampling with a channel matrix gives the output of resampling the mixed input,
+		// when it is mixed as it is decoded, from blocks, or in parallel.
+		AudioProperties properties = new AudioProperties();
+		properties.Format = AudioFormat.WAVE_FLOAT;
+		properties.NumChannels = 6;
+		properties.SampleRate = 48000;
+		properties.BitsPerSample = 32;
+		properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+
+		ByteBuffer input = ByteBuffer.allocate(48000 * properties.getFrameSize()).order(ByteOrder.LITTLE_ENDIAN);
+		Random random = new Random(1);
+
+		while(input.hasRemaining())
+		{
+			input.putFloat(random.nextFloat() - 0.5f);
+		}
+
+		ChannelMatrix matrix = ChannelMatrix.Downmix(6, 2);
+		SampleBlock block = new SampleBlock(6, 0);
+		SampleBlock mixedBlock = new SampleBlock(2, 0);
+
+		block.decode(input.flip(), properties);
+		matrix.mix(block, mixedBlock);
+
+		AudioProperties mixedProperties = properties.copy();
+		mixedProperties.NumChannels = 2;
+		byte[] mixed = mixedBlock.encode(mixedProperties);
+
+		ResamplingFilter[] filters = { new FastResamplingFilter(16000), new PolyphaseResamplingFilter(16000) };
+
+		for(ResamplingFilter filter : filters)
+		{
+			String name = filter.getClass().getSimpleName();
+
+			filter.setInputProperties(mixedProperties);
+			byte[] expected = filter.process(ByteBuffer.wrap(mixed));
+
+			filter.setChannelMatrix(matrix);
+			filter.setInputProperties(properties);
+
+			assertArrayEquals(name, expected, filter.process(input.duplicate()));
+			assertEquals(name, 2, filter.getOutputProperties().NumChannels);
+			assertEquals(name, expected.length, filter.getOutputProperties().DataSize);
+
+			SampleBlock output = new SampleBlock(0, 0);
+			filter.setInputProperties(properties);
+			filter.process(block, output);
+
+			assertArrayEquals(name, expected, output.encode(filter.getOutputProperties()));
+
+			byte[] ranged = new byte[expected.length];
+			((RandomAccessFilter) filter).processFrames(input.duplicate(), 0, 48000, 0, expected.length / 8, ranged, 0);
+
+			assertArrayEquals(name, expected, ranged);
+		}
+	}
+}
@@ -0,0 +1,69 @@
+package audioresampler.audio;
+
+import java.io.IOException;
+
+/**
+ * Receives measurements of a conversion as it runs, such as the time spent reading, filtering
+ * and writing each segment. Stages run on their own threads, and several conversions can report
+ * to the same listener, so implementations must be thread-safe. Callbacks do nothing by default.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public interface ConversionListener
+{
+	/**
+	 * A segment of input data was read and decoded.
+	 * @param bytes The number of bytes read.
+	 * @param nanos The time spent reading and decoding, in nanoseconds.
+	 */
+	default void segmentRead(long bytes, long nanos)
+	{
+	}
+
+	/**
+	 * A segment was filtered and encoded.
+	 * @param inputFrames The number of input frames of the segment.
+	 * @param outputFrames The number of output frames.
+	 * @param nanos The time spent filtering and encoding, in nanoseconds.
+	 */
+	default void segmentFiltered(long inputFrames, long outputFrames, long nanos)
+	{
+	}
+
+	/**
+	 * The output of a segment was written.
+	 * @param bytes The number of bytes written.
+	 * @param nanos The time spent writing, in nanoseconds.
+	 */
+	default void segmentWritten(long bytes, long nanos)
+	{
+	}
+
+	/**
+	 * The number of segments waiting between stages, sampled once per segment filtered.
+	 * Input segments which are always empty show the filter waiting for reads,
+	 * and output segments which are always full show it waiting for writes.
+	 * @param inputSegments The number of decoded segments waiting for the filter.
+	 * @param outputSegments The number of filtered segments waiting for the writer.
+	 * @param capacity The number of segments each queue holds at most.
+	 */
+	default void segmentsQueued(int inputSegments, int outputSegments, int capacity)
+	{
+	}
+
+	/**
+	 * Data could not be read or written. The error is also thrown, or reported by the controller.
+	 */
+	default void ioError(IOException e)
+	{
+	}
+
+	/**
+	 * A conversion is done.
+	 * @param audioSeconds The duration of the input audio, in seconds.
+	 * @param nanos The time spent applying the filter, in nanoseconds.
+	 */
+	default void conversionFinished(double audioSeconds, long nanos)
+	{
+	}
+}
@@ -0,0 +1,320 @@
+package audioresampler.audio;
+
+import java.io.IOException;
+import java.lang.management.ManagementFactory;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.DoubleAdder;
+import java.util.concurrent.atomic.LongAdder;
+
+import javax.management.JMException;
+import javax.management.ObjectName;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Event;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.Timespan;
+
+/**
+ * Records the measurements of conversions, as totals which can be read at any time,
+ * or through JMX once the metrics are registered as an MBean.
+ * Each measurement is also committed as a Java Flight Recorder event, which is only
+ * recorded while a recording is running, for instance with {@code -XX:StartFlightRecording}.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public class ConversionMetrics implements ConversionListener, ConversionMetricsMBean
+{
+	public static final String ObjectName = "audioresampler:type=ConversionMetrics";
+
+	@Name("audioresampler.Segment")
+	@Label("Segment")
+	@Category("Audio Resampler")
+	static final class SegmentEvent extends Event
+	{
+		@Label("Stage")
+		String stage;
+
+		@Label("Bytes")
+		@DataAmount
+		long bytes;
+
+		@Label("Input Frames")
+		long inputFrames;
+
+		@Label("Output Frames")
+		long outputFrames;
+
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long time;
+	}
+
+	@Name("audioresampler.Conversion")
+	@Label("Conversion")
+	@Category("Audio Resampler")
+	static final class ConversionEvent extends Event
+	{
+		@Label("Audio Seconds")
+		double audioSeconds;
+
+		@Label("Time")
+		@Timespan(Timespan.NANOSECONDS)
+		long time;
+
+		@Label("Real Time Factor")
+		double realTimeFactor;
+	}
+
+	@Name("audioresampler.IOError")
+	@Label("I/O Error")
+	@Category("Audio Resampler")
+	static final class IOErrorEvent extends Event
+	{
+		@Label("Message")
+		String message;
+	}
+
+	private final LongAdder conversions = new LongAdder();
+	private final LongAdder inputFrames = new LongAdder();
+	private final LongAdder outputFrames = new LongAdder();
+	private final LongAdder bytesRead = new LongAdder();
+	private final LongAdder bytesWritten = new LongAdder();
+	private final LongAdder readNanos = new LongAdder();
+	private final LongAdder filterNanos = new LongAdder();
+	private final LongAdder writeNanos = new LongAdder();
+	private final LongAdder conversionNanos = new LongAdder();
+	private final DoubleAdder audioSeconds = new DoubleAdder();
+	private final AtomicLong maxReadNanos = new AtomicLong();
+	private final AtomicLong maxWriteNanos = new AtomicLong();
+	private final LongAdder ioErrors = new LongAdder();
+	private final AtomicReference<String> lastIOError = new AtomicReference<String>();
+
+	// The queue lengths sampled last.
+	private volatile int inputQueueLength;
+	private volatile int outputQueueLength;
+	private volatile int queueCapacity;
+
+	/**
+	 * Register the metrics with the platform MBean server, under {@link #ObjectName}.
+	 * @throws JMException If the metrics cannot be registered, or other metrics already are.
+	 */
+	public void register() throws JMException
+	{
+		ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(ObjectName));
+	}
+
+	@Override
+	public void segmentRead(long bytes, long nanos)
+	{
+		bytesRead.add(bytes);
+		readNanos.add(nanos);
+		maxReadNanos.accumulateAndGet(nanos, Math::max);
+
+		commitSegmentEvent("Read", bytes, 0, 0, nanos);
+	}
+
+	@Override
+	public void segmentFiltered(long inputFrames, long outputFrames, long nanos)
+	{
+		this.inputFrames.add(inputFrames);
+		this.outputFrames.add(outputFrames);
+		filterNanos.add(nanos);
+
+		commitSegmentEvent("Filter", 0, inputFrames, outputFrames, nanos);
+	}
+
+	@Override
+	public void segmentWritten(long bytes, long nanos)
+	{
+		bytesWritten.add(bytes);
+		writeNanos.add(nanos);
+		maxWriteNanos.accumulateAndGet(nanos, Math::max);
+
+		commitSegmentEvent("Write", bytes, 0, 0, nanos);
+	}
+
+	@Override
+	public void segmentsQueued(int inputSegments, int outputSegments, int capacity)
+	{
+		inputQueueLength = inputSegments;
+		outputQueueLength = outputSegments;
+		queueCapacity = capacity;
+	}
+
+	@Override
+	public void ioError(IOException e)
+	{
+		ioErrors.increment();
+		lastIOError.set(e.toString());
+
+		IOErrorEvent event = new IOErrorEvent();
+
+		if(event.isEnabled())
+		{
+			event.message = e.toString();
+			event.commit();
+		}
+	}
+
+	@Override
+	public void conversionFinished(double audioSeconds, long nanos)
+	{
+		conversions.increment();
+		this.audioSeconds.add(audioSeconds);
+		conversionNanos.add(nanos);
+
+		ConversionEvent event = new ConversionEvent();
+
+		if(event.isEnabled())
+		{
+			event.audioSeconds = audioSeconds;
+			event.time = nanos;
+			event.realTimeFactor = nanos > 0 ? audioSeconds / (nanos / 1e9) : 0;
+			event.commit();
+		}
+	}
+
+	private static void commitSegmentEvent(String stage, long bytes, long inputFrames, long outputFrames, long nanos)
+	{
+		SegmentEvent event = new SegmentEvent();
+
+		if(event.isEnabled())
+		{
+			event.stage = stage;
+			event.bytes = bytes;
+			event.inputFrames = inputFrames;
+			event.outputFrames = outputFrames;
+			event.time = nanos;
+			event.commit();
+		}
+	}
+
+	@Override
+	public long getConversions()
+	{
+		return conversions.sum();
+	}
+
+	@Override
+	public long getInputFrames()
+	{
+		return inputFrames.sum();
+	}
+
+	@Override
+	public long getOutputFrames()
+	{
+		return outputFrames.sum();
+	}
+
+	@Override
+	public long getBytesRead()
+	{
+		return bytesRead.sum();
+	}
+
+	@Override
+	public long getBytesWritten()
+	{
+		return bytesWritten.sum();
+	}
+
+	@Override
+	public double getReadSeconds()
+	{
+		return readNanos.sum() / 1e9;
+	}
+
+	@Override
+	public double getFilterSeconds()
+	{
+		return filterNanos.sum() / 1e9;
+	}
+
+	@Override
+	public double getWriteSeconds()
+	{
+		return writeNanos.sum() / 1e9;
+	}
+
+	@Override
+	public double getMaxReadMilliseconds()
+	{
+		return maxReadNanos.get() / 1e6;
+	}
+
+	@Override
+	public double getMaxWriteMilliseconds()
+	{
+		return maxWriteNanos.get() / 1e6;
+	}
+
+	@Override
+	public double getRealTimeFactor()
+	{
+		long nanos = conversionNanos.sum();
+
+		return nanos > 0 ? audioSeconds.sum() / (nanos / 1e9) : 0;
+	}
+
+	@Override
+	public int getInputQueueLength()
+	{
+		return inputQueueLength;
+	}
+
+	@Override
+	public int getOutputQueueLength()
+	{
+		return outputQueueLength;
+	}
+
+	@Override
+	public int getQueueCapacity()
+	{
+		return queueCapacity;
+	}
+
+	@Override
+	public long getIOErrors()
+	{
+		return ioErrors.sum();
+	}
+
+	@Override
+	public String getLastIOError()
+	{
+		return lastIOError.get();
+	}
+
+	@Override
+	public void reset()
+	{
+		conversions.reset();
+		inputFrames.reset();
+		outputFrames.reset();
+		bytesRead.reset();
+		bytesWritten.reset();
+		readNanos.reset();
+		filterNanos.reset();
+		writeNanos.reset();
+		conversionNanos.reset();
+		audioSeconds.reset();
+		maxReadNanos.set(0);
+		maxWriteNanos.set(0);
+		ioErrors.reset();
+		lastIOError.set(null);
+	}
+
+	@Override
+	public String toString()
+	{
+		return String.format("%d frames in, %d frames out, %d bytes read, %d bytes written; "
+				+ "read %.2f s, filter %.2f s, write %.2f s; %.1fx real time; %d I/O errors",
+				getInputFrames(), getOutputFrames(), getBytesRead(), getBytesWritten(),
+				getReadSeconds(), getFilterSeconds(), getWriteSeconds(), getRealTimeFactor(), getIOErrors());
+	}
+}
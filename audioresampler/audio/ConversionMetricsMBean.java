@@ -0,0 +1,53 @@
+package audioresampler.audio;
+
+/**
+ * The management interface of {@link ConversionMetrics}, whose attributes are totals
+ * over all conversions since the metrics were created or reset.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public interface ConversionMetricsMBean
+{
+	long getConversions();
+
+	long getInputFrames();
+
+	long getOutputFrames();
+
+	long getBytesRead();
+
+	long getBytesWritten();
+
+	double getReadSeconds();
+
+	double getFilterSeconds();
+
+	double getWriteSeconds();
+
+	/**
+	 * Get the longest time spent reading a segment, in milliseconds.
+	 */
+	double getMaxReadMilliseconds();
+
+	/**
+	 * Get the longest time spent writing a segment, in milliseconds.
+	 */
+	double getMaxWriteMilliseconds();
+
+	/**
+	 * Get the seconds of audio converted per second spent converting.
+	 */
+	double getRealTimeFactor();
+
+	int getInputQueueLength();
+
+	int getOutputQueueLength();
+
+	int getQueueCapacity();
+
+	long getIOErrors();
+
+	String getLastIOError();
+
+	void reset();
+}
@@ -1,22 +1,41 @@
 package audioresampler.audio;
 
-import java.io.ByteArrayOutputStream;
-import java.io.IOException;
 import java.nio.ByteBuffer;
-import java.util.Arrays;
 
 /**
  * A fast implementation of the resampling filter for linear resampling only.
  *
+ * Frame positions are tracked in fixed point, in millionths of an input frame,
+ * which matches the 6 decimal places previously used to round the decimation
+ * rate and the frame pointer, so the frame selection is exact and no rounding
+ * is needed while iterating. Since positions are exact, the position of any output
+ * frame can also be derived from its index, so the filter supports random access.
+ *
+ * Small blocks can be pushed to the filter in real time, into buffers provided by the caller.
+ * Sequential processing reuses its buffers between segments, so it does not allocate once
+ * a segment of the largest size has been processed.
+ *
  * @author Raphaël Zumer <rzumer@gmail.com>
  */
-public class FastResamplingFilter extends ResamplingFilter
+public class FastResamplingFilter extends ResamplingFilter implements RandomAccessFilter, RealTimeFilter
 {
-	private byte[] lastFrameProcessed; // Represents the last frame of the last segment processed with the filter, used for interpolation.
-	private double segmentOffset; // Used to balance the frame selection between segments.
-	private double decimationRate; // Represents the number of input frames per output frame.
+	private static final long PhaseScale = 1000000; // Number of fixed point position units per input frame.
 	private static int DecimalPlaces = 6; // Round weight and decimation rate to avoid floating point errors affecting frame selection
 
+	private float[] lastFrameProcessed; // Represents the samples of the last frame of the last segment processed with the filter, centered on 0, used for interpolation.
+	private boolean hasLastFrame; // Whether lastFrameProcessed holds a frame yet.
+	private long segmentOffset; // Position of the next output frame relative to the first frame of the next segment, in fixed point units.
+	private long initialOffset; // Position of the first output frame relative to the first input frame, in fixed point units.
+	private long decimationRate; // Represents the number of input frames per output frame, in fixed point units.
+	private long outputFrame; // Absolute index of the next output frame of sequential processing.
+	private final SampleKernels kernels = SampleKernels.getInstance();
+	private SampleCodec outputCodec; // Selected for the output format.
+	private int[] frameIndices = new int[0]; // Left input frames of the output frames of a segment, reused between segments.
+	private int[] frameWeights = new int[0]; // Distances from the left input frames, reused between segments.
+	private final SampleBlock pushInput = new SampleBlock(0, 0); // Input frames of a push.
+	private final SampleBlock pushOutput = new SampleBlock(0, 0); // Output frames of a push or a flush.
+	private byte[] pushBuffer = new byte[0]; // Encoded output, for output buffers without an accessible array.
+
 	public FastResamplingFilter(int outSampleRate)
 	{
 		super(outSampleRate);
@@ -28,185 +47,552 @@ public class FastResamplingFilter extends ResamplingFilter
 		super.setInputProperties(properties);
 
 		// Set the decimation rate.
-		decimationRate = MathHelper.Round((double)properties.SampleRate / outProperties.SampleRate, DecimalPlaces);
+		double rate = MathHelper.Round((double)properties.SampleRate / outProperties.SampleRate, DecimalPlaces);
+		decimationRate = Math.round(rate * PhaseScale);
 
 		// The segment offset is initialized at half the decimation rate.
-		segmentOffset = MathHelper.Round(decimationRate / 2, DecimalPlaces);
+		segmentOffset = Math.round(MathHelper.Round(rate / 2, DecimalPlaces) * PhaseScale);
 
 		// When upsampling, get the extra number of samples needed by starting before the first sample.
 		if(outProperties.SampleRate > properties.SampleRate)
 		{
 			segmentOffset *= -1;
 		}
+
+		initialOffset = segmentOffset;
+
+		outputCodec = SampleCodec.ForProperties(outProperties);
+
+		lastFrameProcessed = new float[outProperties.NumChannels];
+		hasLastFrame = false;
+		outputFrame = 0;
 	}
 
 	// O(n) * O(1) = O(n)
+	// Replaces the deprecated implementation of the reference filter, and is not deprecated itself.
 	@Override
+	@SuppressWarnings("deprecation")
 	public byte[] process(byte[] input)
 	{
-		// 32-bit input is not yet supported.
-		if(!validateInputParameters(0, 24))
+		return process(ByteBuffer.wrap(input));
+	}
+
+	// O(n) * O(1) = O(n)
+	@Override
+	public byte[] process(ByteBuffer input)
+	{
+		if(!validateInputParameters(0, 32))
 		{
 			throw new UnsupportedOperationException();
 		}
 
 		if(outProperties.SampleRate == properties.SampleRate)
 		{
+			if(isConvertingFrames())
+			{
+				// Only the sample format or channels change.
+				return processAsBlock(input);
+			}
+
 			// No processing needed.
-			return input;
+			byte[] data = new byte[input.remaining()];
+			input.duplicate().get(data);
+
+			outProperties.DataSize += data.length;
+			return data;
 		}
 
-		// Initialization
 		int frameSize = properties.getFrameSize();
+		int inputLength = input.remaining();
 
-		ByteBuffer inputBuffer = ByteBuffer.wrap(input);
-		inputBuffer.order(properties.ByteOrder);
-		ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+		SampleBlock inputBlock = blockPool.acquire(outProperties.NumChannels, inputLength / frameSize);
+		SampleBlock outputBlock = blockPool.acquire(outProperties.NumChannels, 0);
 
-		// Iteration
-		int frameCount = 0;
+		inputBlock.decode(input, 0, inputLength / frameSize, inputCodec, 0);
+		inputBlock.setFrameCount(inputLength / frameSize);
+		resampleSegment(inputBlock, inputLength, outputBlock);
 
-		// O(n) - Iterate through frames, dependent on n (input length).
-		for(;;)
-		{
-			// The next location of the sample to retrieve. If the value is decimal, it is between two frames.
-			double framePointer = MathHelper.Round(segmentOffset + (frameCount * decimationRate), DecimalPlaces);
-			// The decimal portion of the frame pointer.
-			double framePointerDecimal = MathHelper.Round(framePointer % 1, DecimalPlaces);
-			/* An adjusted, positive value of the frame pointer's decimal portion,
-			 * representing the distance between the left frame and the right frame to interpolate.
-			 * When downsampling, it is the same value as framePointerDecimal. When upsampling,
-			 * consecutive input data will result in a negative offset, meaning the last frame
-			 * processed in the last set of input data is interpolated with the first frame of the
-			 * current input data to obtain the correct number of samples in output. In this case,
-			 * framePointerDecimal will be a negative value, and must be adjusted for interpolation.
-			 */
-			double weight = MathHelper.Round((framePointerDecimal + 1) % 1, DecimalPlaces);
-
-			// The frame numbers used to perform interpolation.
-			int leftFrameNumber = (int) Math.round(framePointer - weight);
-			int rightFrameNumber = leftFrameNumber + 1;
+		// The last frame is read from the bytes, as a partial frame at the end of the input counts as a frame.
+		if(inputLength >= frameSize)
+		{
+			inputCodec.readFrame(input.slice(), inputLength - frameSize, lastFrameProcessed);
+		}
+
+		byte[] output = outputBlock.encode(outProperties, outputCodec);
+
+		blockPool.release(inputBlock);
+		blockPool.release(outputBlock);
+
+		return output;
+	}
+
+	// O(n) * O(1) = O(n)
+	@Override
+	public void process(SampleBlock input, SampleBlock output)
+	{
+		if(!validateInputParameters(0, 32))
+		{
+			throw new UnsupportedOperationException();
+		}
 
-			// Ensure that the input data is large enough to contain the frames required in this loop.
-			// If the weight is 0, only one frame is needed, the left frame. Otherwise, two frames are needed.
-			// When upsampling, one last loop will be performed with empty input data to add extra frames based
-			// on the remaining offset. The second test ensures that there is no missing or extra sample(s) added.
-			if(input.length < (framePointerDecimal > 0 ? rightFrameNumber : leftFrameNumber) * frameSize + frameSize || (input.length == 0 && (int)Math.round(framePointerDecimal) >= 0))
+		SampleBlock mixed = mixChannels(input);
+		processMixed(mixed, output);
+		releaseMixedBlock(input, mixed);
+	}
+
+	// O(n)
+	// Processes the frames of a block whose channels are the output channels.
+	private void processMixed(SampleBlock input, SampleBlock output)
+	{
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			// No processing needed, other than changing the sample format.
+			if(isRequantizing())
 			{
-				break;
+				requantize(input, output, outputFrame);
+			}
+			else
+			{
+				input.copyTo(output);
 			}
 
-			// Read samples in the left and right frames.
-			// Left samples are null on the first frame when upsampling, due to a negative offset.
-			// Right samples are null when the weight is 0, meaning an input sample is simply copied to the output.
-			int[] leftSamples = leftFrameNumber < 0 ? readFrameSamples(lastFrameProcessed) : readFrameSamples(inputBuffer, leftFrameNumber);
-			int[] rightSamples = weight > 0 ? readFrameSamples(inputBuffer, rightFrameNumber) : null;
+			outputFrame += input.getFrameCount();
+			outProperties.DataSize += input.getFrameCount() * outProperties.getFrameSize();
+			return;
+		}
 
-			int[] interpolatedSamples = new int[properties.NumChannels];
+		resampleSegment(input, input.getFrameCount() * properties.getFrameSize(), output);
 
-			// O(1) - Iterate through channels, independent from n.
-			for(int channel = 0; channel < properties.NumChannels; channel++)
+		if(input.getFrameCount() > 0)
+		{
+			for(int channel = 0; channel < outProperties.NumChannels; channel++)
 			{
-				// Perform the actual interpolation.
-				// When the left sample is set to 0 (because the bytes are null), the right sample will be interpolated with 0.
-				// When the right sample is set to 0, then the weight is typically equal to 0, and the left sample will be selected as is.
-				interpolatedSamples[channel] = MathHelper.InterpolateLinear(leftSamples == null ? 0 : leftSamples[channel], rightSamples == null ? 0 : rightSamples[channel], weight);
-
-				try
-				{
-					// Write interpolated samples to the output stream.
-					if(properties.BitsPerSample <= 8)
-					{
-						outputStream.write((byte) interpolatedSamples[channel]);
-					}
-					else if(properties.BitsPerSample <= 16)
-					{
-						outputStream.write(ByteHelper.GetShortBytes((short) interpolatedSamples[channel], properties.ByteOrder));
-					}
-					else if(properties.BitsPerSample <= 24)
-					{
-						outputStream.write(ByteHelper.GetNumberBytes(interpolatedSamples[channel], properties.ByteOrder, 3));
-					}
-					else
-					{
-						// Assuming 32-bit signed integers.
-						outputStream.write(ByteHelper.GetIntBytes(interpolatedSamples[channel], properties.ByteOrder));
-					}
-				}
-				catch (IOException e)
-				{
-					System.err.println("Error Writing Output Stream");
-				}
+				lastFrameProcessed[channel] = input.getChannel(channel)[input.getFrameCount() - 1];
 			}
+		}
+	}
 
-			// Increment the output frame count.
-			frameCount++;
+	// O(n)
+	// Resamples a segment of the given length in bytes, whose whole frames are in the input block,
+	// and moves the position of the next output frame to the next segment.
+	// The last frame processed must be updated afterwards if the segment holds a frame.
+	private void resampleSegment(SampleBlock input, int inputLength, SampleBlock output)
+	{
+		int frameSize = properties.getFrameSize();
+		int frameCount = getSegmentOutputFrameCount(inputLength);
 
-			// Place the buffer back to the first byte of the left frame.
-			inputBuffer.position(Math.max(leftFrameNumber * frameSize, 0));
-		}
+		output.reserve(outProperties.NumChannels, frameCount);
+		output.setFrameCount(frameCount);
+		reservePositions(frameCount);
 
-		// Set the last frame processed and the segment offset in order to process the next data segment properly.
+		resample(input, input.getFrameCount(), hasLastFrame ? lastFrameProcessed : null, segmentOffset, outputFrame, frameCount,
+				frameIndices, frameWeights, output, 0);
+		outputFrame += frameCount;
+
+		// Set the segment offset in order to process the next data segment properly.
 		// This is skipped on the last empty segment, as there is no actual frame being processed.
-		if(input.length >= frameSize)
+		if(inputLength >= frameSize)
 		{
-			lastFrameProcessed = Arrays.copyOfRange(input, input.length - frameSize, input.length);
-			segmentOffset -= MathHelper.Round(((input.length / (decimationRate * frameSize) - (frameCount))) * decimationRate, DecimalPlaces);
+			hasLastFrame = true;
+
+			long inputPosition = inputLength % frameSize == 0 ?
+					inputLength / frameSize * PhaseScale :
+					Math.round((double)inputLength * PhaseScale / frameSize);
+
+			segmentOffset -= inputPosition - frameCount * decimationRate;
 		}
 
-		outProperties.DataSize += outputStream.size();
-		return outputStream.toByteArray();
+		outProperties.DataSize += frameCount * outProperties.getFrameSize();
 	}
 
 	// O(1)
-	// Reads the contents of a frame into an integer per channel value, used for processing.
-	private int[] readFrameSamples(ByteBuffer buffer, int frameNumber)
+	// Computes the number of frames output for a segment of the given length in bytes.
+	// A frame is output once the last input frame it depends on is available.
+	// The final empty segment outputs the frames located less than half a frame past the end of the input when upsampling.
+	private int getSegmentOutputFrameCount(int inputLength)
 	{
-		int position = frameNumber * properties.getFrameSize();
+		long lastPosition;
 
-		if(buffer.limit() < position + properties.getFrameSize())
+		if(inputLength == 0)
 		{
-			return null;
+			// Positions in (-1, -0.5) frames, interpolated between the last frame processed and silence.
+			lastPosition = -(PhaseScale / 2) - 1;
 		}
+		else
+		{
+			// Positions up to the last complete frame of the input, inclusively.
+			lastPosition = (inputLength / properties.getFrameSize() - 1) * PhaseScale;
+		}
+
+		if(lastPosition < segmentOffset || segmentOffset <= -PhaseScale)
+		{
+			return 0;
+		}
+
+		return (int) ((lastPosition - segmentOffset) / decimationRate + 1);
+	}
 
-		buffer.position(position);
+	// O(1)
+	@Override
+	public long getOutputFrameCount(long inputFrameCount)
+	{
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			return inputFrameCount;
+		}
 
-		int[] samples = new int[properties.NumChannels];
+		// Frames are output up to the last input frame, and the last empty segment
+		// outputs the frames located less than half a frame past the end of the input.
+		long lastPosition = inputFrameCount * PhaseScale - PhaseScale / 2 - 1;
 
-		for(int channel = 0; channel < properties.NumChannels; channel++)
+		if(lastPosition < initialOffset)
 		{
-			if(properties.BitsPerSample <= 8)
+			return 0;
+		}
+
+		return (lastPosition - initialOffset) / decimationRate + 1;
+	}
+
+	// O(1)
+	@Override
+	public long getFirstInputFrame(long outputFrame)
+	{
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			return outputFrame;
+		}
+
+		return Math.floorDiv(initialOffset + outputFrame * decimationRate, PhaseScale);
+	}
+
+	// O(1)
+	@Override
+	public long getLastInputFrame(long outputFrame)
+	{
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			return outputFrame;
+		}
+
+		return getFirstInputFrame(outputFrame) + 1;
+	}
+
+	// O(n)
+	@Override
+	public void processFrames(ByteBuffer input, long inputFrame, long inputFrameCount,
+			long outputFrame, int frameCount, byte[] output, int outputOffset)
+	{
+		int frameSize = properties.getFrameSize();
+
+		ByteBuffer inputBuffer = input.slice();
+		inputBuffer.order(properties.ByteOrder);
+
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			if(isConvertingFrames())
 			{
-				samples[channel] = buffer.get() & 0xff;
+				// Only the sample format or channels change.
+				convertFrames(inputBuffer, (int) (outputFrame - inputFrame), outputFrame, frameCount, output, outputOffset);
+				return;
 			}
-			else if(properties.BitsPerSample <= 16)
+
+			// No processing needed.
+			inputBuffer.position((int) (outputFrame - inputFrame) * frameSize);
+			inputBuffer.get(output, outputOffset, frameCount * frameSize);
+			return;
+		}
+
+		int inputFrames = (int) Math.min(inputBuffer.remaining() / frameSize, inputFrameCount - inputFrame);
+		long framePointer = initialOffset + outputFrame * decimationRate - inputFrame * PhaseScale;
+
+		SampleBlock inputBlock = blockPool.acquire(outProperties.NumChannels, inputFrames);
+		SampleBlock outputBlock = blockPool.acquire(outProperties.NumChannels, frameCount);
+
+		inputBlock.decode(inputBuffer, 0, inputFrames, inputCodec, 0);
+		inputBlock.setFrameCount(inputFrames);
+		outputBlock.setFrameCount(frameCount);
+
+		// Frames before the input buffer are only needed before the first input frame, and are silent.
+		// Ranges can be computed in parallel, so they do not share the positions of sequential segments.
+		resample(inputBlock, inputFrames, null, framePointer, outputFrame, frameCount, new int[frameCount], new int[frameCount], outputBlock, 0);
+		outputBlock.encode(outProperties, outputCodec, output, outputOffset);
+
+		blockPool.release(inputBlock);
+		blockPool.release(outputBlock);
+	}
+
+	// O(1)
+	@Override
+	public int getMaxOutputFrameCount(int inputFrameCount)
+	{
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			return inputFrameCount;
+		}
+
+		// The next output frame is less than a frame before the input, and a flush outputs
+		// the frames less than half a frame past its end.
+		return (int) (((long)inputFrameCount * PhaseScale + PhaseScale / 2) / decimationRate + 1);
+	}
+
+	// O(n)
+	@Override
+	public int push(ByteBuffer input, ByteBuffer output)
+	{
+		if(!validateInputParameters(0, 32))
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		int frameSize = properties.getFrameSize();
+		int outputFrames = output.remaining() / outProperties.getFrameSize();
+		int inputFrames = input.remaining() / frameSize;
+
+		if(outProperties.SampleRate == properties.SampleRate && !isConvertingFrames())
+		{
+			// No processing needed.
+			int length = Math.min(inputFrames, outputFrames) * frameSize;
+
+			output.put(output.position(), input, input.position(), length);
+			output.position(output.position() + length);
+			input.position(input.position() + length);
+			outProperties.DataSize += length;
+
+			return length / frameSize;
+		}
+
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			// Only the sample format or channels change, one output frame per input frame.
+			inputFrames = Math.min(inputFrames, outputFrames);
+		}
+		else
+		{
+			// Consume the input frames up to the frame at which the first output frame which does not fit is output,
+			// exclusively, as in getSegmentOutputFrameCount.
+			long nextPosition = segmentOffset + outputFrames * decimationRate;
+			inputFrames = (int) Math.min(inputFrames, Math.max(0, Math.floorDiv(nextPosition - 1, PhaseScale) + 1));
+		}
+
+		if(inputFrames == 0)
+		{
+			// An empty segment would end the input.
+			return 0;
+		}
+
+		// Frames are decoded to the output channels.
+		pushInput.reserve(outProperties.NumChannels, inputFrames);
+		pushInput.decode(input, 0, inputFrames, inputCodec, 0);
+		pushInput.setFrameCount(inputFrames);
+
+		processMixed(pushInput, pushOutput);
+
+		input.position(input.position() + inputFrames * frameSize);
+
+		return putFrames(pushOutput, output);
+	}
+
+	// O(n)
+	@Override
+	public int flush(ByteBuffer output)
+	{
+		if(!validateInputParameters(0, 32))
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		int frameCount = 0;
+
+		if(outProperties.SampleRate != properties.SampleRate)
+		{
+			frameCount = Math.min(getSegmentOutputFrameCount(0), output.remaining() / outProperties.getFrameSize());
+
+			pushInput.reserve(outProperties.NumChannels, 0);
+			pushInput.setFrameCount(0);
+			pushOutput.reserve(outProperties.NumChannels, frameCount);
+			pushOutput.setFrameCount(frameCount);
+			reservePositions(frameCount);
+
+			resample(pushInput, 0, hasLastFrame ? lastFrameProcessed : null, segmentOffset, outputFrame, frameCount,
+					frameIndices, frameWeights, pushOutput, 0);
+
+			// Move past the frames output, so that the next flush outputs the rest.
+			segmentOffset += frameCount * decimationRate;
+			outputFrame += frameCount;
+			outProperties.DataSize += frameCount * outProperties.getFrameSize();
+
+			putFrames(pushOutput, output);
+		}
+
+		if(outProperties.SampleRate == properties.SampleRate || getSegmentOutputFrameCount(0) == 0)
+		{
+			// Start a new stream.
+			segmentOffset = initialOffset;
+			hasLastFrame = false;
+			outputFrame = 0;
+		}
+
+		return frameCount;
+	}
+
+	// O(n)
+	// Encodes the frames of a block to the position of a buffer, and moves its position past them.
+	private int putFrames(SampleBlock block, ByteBuffer output)
+	{
+		int position = output.position();
+		int length = block.getFrameCount() * outProperties.getFrameSize();
+
+		if(output.hasArray())
+		{
+			block.encode(outProperties, outputCodec, output.array(), output.arrayOffset() + position);
+		}
+		else
+		{
+			if(pushBuffer.length < length)
 			{
-				samples[channel] = buffer.getShort();
+				pushBuffer = new byte[length];
 			}
-			else if(properties.BitsPerSample <= 24)
-			{
-				byte[] sampleBytes = new byte[3];
-				buffer.get(sampleBytes);
 
-				samples[channel] = ByteHelper.GetIntFromBytes(sampleBytes, properties.ByteOrder);
-			}
-			else
+			block.encode(outProperties, outputCodec, pushBuffer, 0);
+			output.put(position, pushBuffer, 0, length);
+		}
+
+		output.position(position + length);
+
+		return block.getFrameCount();
+	}
+
+	// O(1)
+	// Grows the position arrays of sequential segments to hold at least a number of frames.
+	private void reservePositions(int frameCount)
+	{
+		if(frameIndices.length < frameCount)
+		{
+			frameIndices = new int[frameCount];
+			frameWeights = new int[frameCount];
+		}
+	}
+
+	// O(n)
+	// Interpolates output frames from a fixed point position relative to the first frame of the input,
+	// and writes them into the output block from a frame offset, in the output format from the absolute index of the first output frame.
+	// The positions of the frames are stored in the index and weight arrays, which must hold at least the number of frames.
+	// Frames before the input are read from the previous frame, and are silent if there is none.
+	// Frames from the input frame count on are silent.
+	// Samples are interpolated with the bias of unsigned samples, so that silence is 0 as stored in bytes.
+	// Floating point samples are interpolated as is, without rounding.
+	private void resample(SampleBlock input, int inputFrameCount, float[] previousFrame, long framePointer, long firstOutputFrame,
+			int frameCount, int[] indices, int[] weights, SampleBlock output, int outputOffset)
+	{
+		int numChannels = outProperties.NumChannels;
+
+		// O(n) - The positions are the same for every channel, so they are computed once.
+		// The frame pointer is the location of the sample to retrieve. If the value is not a whole frame, it is between two frames.
+		int firstInnerFrame = frameCount;
+		int innerFrameCount = 0;
+
+		for(int frame = 0; frame < frameCount; frame++, framePointer += decimationRate)
+		{
+			// The left frame of the interpolation, which is the frame before the input if the pointer is negative when upsampling,
+			// and the distance between the left frame and the right frame in fixed point units.
+			long leftFrameNumber = Math.floorDiv(framePointer, PhaseScale);
+
+			indices[frame] = (int) leftFrameNumber;
+			weights[frame] = (int) (framePointer - leftFrameNumber * PhaseScale);
+
+			// Frames interpolated between two input frames are computed by the kernels, the others at the edges below.
+			if(leftFrameNumber >= 0 && leftFrameNumber + 1 < inputFrameCount)
 			{
-				// Assuming 32-bit signed integers.
-				samples[channel] = buffer.getInt();
+				firstInnerFrame = Math.min(firstInnerFrame, frame);
+				innerFrameCount++;
 			}
 		}
 
-		return samples;
+		// O(1) - Iterate through channels, independent from n, in groups for recordings with many channels.
+		// The positions are shared by all of the groups.
+		final int firstFrame = firstInnerFrame;
+		final int innerFrames = innerFrameCount;
+		int groupCount = getChannelGroupCount(frameCount);
+
+		if(groupCount > 1)
+		{
+			RunChannelGroups(groupCount, numChannels, (firstChannel, endChannel) -> resampleChannels(firstChannel, endChannel,
+					input, inputFrameCount, previousFrame, firstOutputFrame, frameCount, indices, weights, firstFrame, innerFrames, output, outputOffset));
+		}
+		else
+		{
+			resampleChannels(0, numChannels, input, inputFrameCount, previousFrame, firstOutputFrame, frameCount, indices, weights,
+					firstInnerFrame, innerFrameCount, output, outputOffset);
+		}
 	}
 
-	private int[] readFrameSamples(byte[] frame)
+	// O(n)
+	// Interpolates the channels of a group from the positions of the output frames, of which the inner frames
+	// are interpolated between two input frames. The samples of each channel are requantized once interpolated, while they are in the cache.
+	private void resampleChannels(int firstChannel, int endChannel, SampleBlock input, int inputFrameCount, float[] previousFrame,
+			long firstOutputFrame, int frameCount, int[] indices, int[] weights, int firstInnerFrame, int innerFrameCount, SampleBlock output, int outputOffset)
 	{
-		if(frame == null)
+		int bias = SampleBlock.GetBias(properties.BitsPerSample);
+
+		for(int channel = firstChannel; channel < endChannel; channel++)
 		{
-			return null;
+			float[] samples = input.getChannel(channel);
+			float[] outputSamples = output.getChannel(channel);
+
+			if(properties.isFloatingPoint())
+			{
+				InterpolateFloat(samples, inputFrameCount, previousFrame != null ? previousFrame[channel] : 0,
+						indices, weights, frameCount, outputSamples, outputOffset);
+				requantize(outputSamples, outputOffset, frameCount, channel, firstOutputFrame);
+				continue;
+			}
+
+			kernels.interpolate(samples, indices, weights, firstInnerFrame, innerFrameCount, outputSamples, outputOffset, bias);
+
+			for(int frame = 0; frame < frameCount; frame++)
+			{
+				if(frame == firstInnerFrame)
+				{
+					frame += innerFrameCount - 1;
+					continue;
+				}
+
+				int leftFrameNumber = indices[frame];
+				int rightFrameNumber = leftFrameNumber + 1;
+				double weight = (double)weights[frame] / PhaseScale;
+
+				// Left samples are 0 on the first frame when upsampling, due to a negative offset.
+				// Right samples are 0 when past the end of the input on the last empty segment,
+				// and are not needed when the weight is 0, meaning an input sample is simply copied to the output.
+				int leftSample = leftFrameNumber < 0 ?
+						(previousFrame != null ? (int) previousFrame[channel] + bias : 0) :
+						(int) samples[leftFrameNumber] + bias;
+				int rightSample = weight > 0 && rightFrameNumber < inputFrameCount ?
+						(int) samples[rightFrameNumber] + bias : 0;
+
+				// Perform the actual interpolation and write the sample to the output.
+				outputSamples[outputOffset + frame] = MathHelper.InterpolateLinear(leftSample, rightSample, weight) - bias;
+			}
+
+			requantize(outputSamples, outputOffset, frameCount, channel, firstOutputFrame);
 		}
+	}
 
-		return readFrameSamples(ByteBuffer.wrap(frame), 0);
+	// O(n)
+	// Interpolates floating point samples of a channel at the given positions, from the previous sample before the input.
+	private static void InterpolateFloat(float[] samples, int inputFrameCount, float previousSample,
+			int[] indices, int[] weights, int frameCount, float[] output, int outputOffset)
+	{
+		for(int frame = 0; frame < frameCount; frame++)
+		{
+			int leftFrameNumber = indices[frame];
+			int rightFrameNumber = leftFrameNumber + 1;
+			double weight = (double)weights[frame] / PhaseScale;
+
+			float leftSample = leftFrameNumber < 0 ? previousSample : samples[leftFrameNumber];
+			float rightSample = weight > 0 && rightFrameNumber < inputFrameCount ? samples[rightFrameNumber] : 0;
+
+			output[outputOffset + frame] = (float) (leftSample + (rightSample - leftSample) * weight);
+		}
 	}
 }
@@ -0,0 +1,281 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import java.lang.management.ManagementFactory;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+import java.util.Random;
+
+import org.junit.Test;
+
+import audioresampler.audio.AudioProperties.AudioFormat;
+
+public class FastResamplingFilterTest
+{
+	@Test
+	public void testPush()
+	{
+		// Pushing blocks of any size, into output buffers of any size, gives the output of processing the whole input.
+		byte[] input = new byte[48000 * 4];
+		new Random(1).nextBytes(input);
+
+		for(int sampleRate : new int[] { 8000, 44100, 48000, 96000 })
+		{
+			byte[] expected = processAll(input, sampleRate);
+
+			assertArrayEquals(expected, pushAll(input, sampleRate, 0, ByteBuffer.allocate(expected.length)));
+			assertArrayEquals(expected, pushAll(input, sampleRate, 3, ByteBuffer.allocateDirect(expected.length)));
+		}
+	}
+
+	@Test
+	public void testChannelParallelism()
+	{
+		// Groups of channels resampled in parallel give the output of resampling all channels in order.
+		AudioProperties properties = CreateProperties(48000);
+		properties.NumChannels = 16;
+
+		byte[] input = new byte[48000 * properties.getFrameSize()];
+		new Random(1).nextBytes(input);
+
+		ResamplingFilter[] filters = { new FastResamplingFilter(44100), new PolyphaseResamplingFilter(44100) };
+
+		for(ResamplingFilter filter : filters)
+		{
+			filter.setInputProperties(properties);
+			byte[] expected = filter.process(ByteBuffer.wrap(input));
+
+			filter.setInputProperties(properties);
+			filter.setChannelParallelism(4);
+
+			assertArrayEquals(filter.getClass().getSimpleName(), expected, filter.process(ByteBuffer.wrap(input)));
+		}
+	}
+
+	@Test
+	public void testRequantization()
+	{
+		// Samples written in another format are within a step of dither of the samples written without dither,
+		// whatever the number of channels resampled in parallel, and samples at the same rate are only scaled.
+		AudioProperties properties = CreateProperties(48000);
+		properties.BitsPerSample = 24;
+
+		byte[] input = new byte[48000 * properties.getFrameSize()];
+		new Random(1).nextBytes(input);
+
+		ResamplingFilter[] filters = { new FastResamplingFilter(44100), new PolyphaseResamplingFilter(44100) };
+
+		for(ResamplingFilter filter : filters)
+		{
+			String name = filter.getClass().getSimpleName();
+
+			filter.setOutputFormat(AudioFormat.WAVE_PCM, 16);
+			filter.setInputProperties(properties);
+			short[] expected = ToShorts(filter.process(ByteBuffer.wrap(input)));
+
+			assertEquals(name, 16, filter.getOutputProperties().BitsPerSample);
+
+			filter.setDither(true);
+			filter.setInputProperties(properties);
+			byte[] ditheredData = filter.process(ByteBuffer.wrap(input));
+			short[] dithered = ToShorts(ditheredData);
+
+			filter.setInputProperties(properties);
+			filter.setChannelParallelism(2);
+
+			assertArrayEquals(name, ditheredData, filter.process(ByteBuffer.wrap(input)));
+			assertEquals(name, expected.length, dithered.length);
+
+			int changed = 0;
+
+			for(int i = 0; i < expected.length; i++)
+			{
+				assertTrue(name, Math.abs(expected[i] - dithered[i]) <= 1);
+				changed += expected[i] != dithered[i] ? 1 : 0;
+			}
+
+			assertTrue(name, changed > expected.length / 4);
+		}
+
+		FastResamplingFilter filter = new FastResamplingFilter(48000);
+
+		// Samples are stored in whole bytes, so other depths are rejected.
+		try
+		{
+			filter.setOutputFormat(AudioFormat.WAVE_PCM, 20);
+			fail("Unsupported Bit Depth");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// The output format is unchanged.
+		}
+
+		// Samples are processed as floats, so 32-bit integer samples cannot be written without losing their low bits.
+		AudioProperties integerProperties = CreateProperties(48000);
+		integerProperties.BitsPerSample = 32;
+
+		try
+		{
+			filter.setOutputFormat(AudioFormat.WAVE_PCM, 32);
+			fail("32-bit Integer Output");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// The output format is unchanged.
+		}
+
+		try
+		{
+			filter.setInputProperties(integerProperties);
+			fail("32-bit Integer Output");
+		}
+		catch(IllegalArgumentException e)
+		{
+			// 32-bit integer input is written as 24-bit or floating point samples.
+			filter.setOutputFormat(AudioFormat.WAVE_PCM, 24);
+			filter.setInputProperties(integerProperties);
+		}
+
+		filter.setOutputFormat(AudioFormat.WAVE_FLOAT, 32);
+		filter.setInputProperties(CreateProperties(48000));
+
+		byte[] samples = new byte[] { 0, -128, -1, 127, 0, 64, 1, 0 };
+		ByteBuffer output = ByteBuffer.wrap(filter.process(samples)).order(ByteOrder.LITTLE_ENDIAN);
+
+		assertEquals(AudioFormat.WAVE_FLOAT, filter.getOutputProperties().Format);
+		assertEquals(-1, output.getFloat(0), 0);
+		assertEquals(32767 / 32768f, output.getFloat(4), 0);
+		assertEquals(0.5f, output.getFloat(8), 0);
+		assertEquals(1 / 32768f, output.getFloat(12), 0);
+	}
+
+	@Test
+	public void testPushLatency()
+	{
+		// Blocks of 10 ms of 48 kHz stereo are resampled to 44.1 kHz without allocating once the filter is warmed up,
+		// and the distribution of the time per block is printed.
+		final int BlockFrames = 480;
+		final int Warmup = 20000;
+		final int Blocks = 20000;
+
+		FastResamplingFilter filter = new FastResamplingFilter(44100);
+		filter.setInputProperties(CreateProperties(48000));
+
+		ByteBuffer input = ByteBuffer.allocate(BlockFrames * 4);
+		ByteBuffer output = ByteBuffer.allocate(filter.getMaxOutputFrameCount(BlockFrames) * 4);
+		long[] latencies = new long[Blocks];
+		new Random(1).nextBytes(input.array());
+
+		com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+		long allocatedBytes = 0;
+
+		for(int block = -Warmup; block < Blocks; block++)
+		{
+			if(block == 0)
+			{
+				allocatedBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId());
+			}
+
+			input.clear();
+			output.clear();
+
+			long startTime = System.nanoTime();
+			filter.push(input, output);
+			long endTime = System.nanoTime();
+
+			if(block >= 0)
+			{
+				latencies[block] = endTime - startTime;
+			}
+
+			assertFalse(input.hasRemaining());
+		}
+
+		allocatedBytes = threads.getThreadAllocatedBytes(Thread.currentThread().getId()) - allocatedBytes;
+		Arrays.sort(latencies);
+
+		System.out.println(String.format("Push latency per %d frame block: p50 %.1f us, p99 %.1f us, p999 %.1f us, max %.1f us",
+				BlockFrames, latencies[Blocks / 2] / 1e3, latencies[Blocks * 99 / 100] / 1e3,
+				latencies[Blocks * 999 / 1000] / 1e3, latencies[Blocks - 1] / 1e3));
+
+		// Less than a byte per block, which leaves room for allocations of the runtime itself.
+		assertTrue("Allocated " + allocatedBytes + " bytes", allocatedBytes < Blocks);
+	}
+
+	private static byte[] processAll(byte[] input, int sampleRate)
+	{
+		FastResamplingFilter filter = new FastResamplingFilter(sampleRate);
+		filter.setInputProperties(CreateProperties(48000));
+
+		byte[] output = filter.process(input);
+		byte[] last = filter.process(new byte[0]);
+
+		output = Arrays.copyOf(output, output.length + last.length);
+		System.arraycopy(last, 0, output, output.length - last.length, last.length);
+
+		return output;
+	}
+
+	// Pushes blocks of 5 to 20 ms, into outputs of a number of frames, or of the largest output of a block if 0.
+	private static byte[] pushAll(byte[] input, int sampleRate, int outputFrames, ByteBuffer result)
+	{
+		FastResamplingFilter filter = new FastResamplingFilter(sampleRate);
+		filter.setInputProperties(CreateProperties(48000));
+
+		Random random = new Random(2);
+		ByteBuffer output = ByteBuffer.allocate((outputFrames > 0 ? outputFrames : filter.getMaxOutputFrameCount(960)) * 4);
+
+		for(int position = 0; position < input.length; )
+		{
+			ByteBuffer block = ByteBuffer.wrap(input, position, Math.min(input.length - position, (240 + random.nextInt(721)) * 4));
+
+			while(block.hasRemaining())
+			{
+				output.clear();
+				int frameCount = filter.push(block, output);
+
+				assertEquals(frameCount * 4, output.position());
+				result.put(output.flip());
+			}
+
+			position = block.position();
+		}
+
+		do
+		{
+			output.clear();
+			filter.flush(output);
+			result.put(output.flip());
+		}
+		while(output.hasRemaining());
+
+		assertEquals(result.capacity(), result.position());
+
+		byte[] data = new byte[result.capacity()];
+		result.flip().get(data);
+
+		return data;
+	}
+
+	private static short[] ToShorts(byte[] data)
+	{
+		short[] samples = new short[data.length / 2];
+		ByteBuffer.wrap(data).order(ByteOrder.LITTLE_ENDIAN).asShortBuffer().get(samples);
+
+		return samples;
+	}
+
+	private static AudioProperties CreateProperties(int sampleRate)
+	{
+		AudioProperties properties = new AudioProperties();
+		properties.Format = AudioFormat.WAVE_PCM;
+		properties.NumChannels = 2;
+		properties.SampleRate = sampleRate;
+		properties.BitsPerSample = 16;
+		properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+
+		return properties;
+	}
+}
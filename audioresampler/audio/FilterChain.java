@@ -0,0 +1,154 @@
+package audioresampler.audio;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * An ordered chain of filters applied as a single filter, in one pass over the data.
+ *
+ * The output properties of each filter are the input properties of the next,
+ * and frames are passed between filters in sample blocks which are reused for every segment,
+ * so the data is only decoded and encoded once whatever the number of filters.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public class FilterChain extends AudioFilter
+{
+	private final List<AudioFilter> filters;
+	private final SampleBlock[] blocks; // Output blocks of each filter but the last, reused between segments.
+	private final SampleBlock[] flushBlocks; // Blocks used to collect the final frames of each filter at the end of the input.
+
+	public FilterChain(AudioFilter... filters)
+	{
+		this(Arrays.asList(filters));
+	}
+
+	public FilterChain(List<AudioFilter> filters)
+	{
+		super();
+
+		if(filters.isEmpty() || filters.contains(null))
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.filters = Collections.unmodifiableList(new ArrayList<AudioFilter>(filters));
+
+		blocks = new SampleBlock[filters.size() - 1];
+		flushBlocks = new SampleBlock[2];
+
+		for(int i = 0; i < blocks.length; i++)
+		{
+			blocks[i] = new SampleBlock(0, 0);
+		}
+
+		for(int i = 0; i < flushBlocks.length; i++)
+		{
+			flushBlocks[i] = new SampleBlock(0, 0);
+		}
+	}
+
+	public List<AudioFilter> getFilters()
+	{
+		return filters;
+	}
+
+	@Override
+	public void setInputProperties(AudioProperties properties)
+	{
+		super.setInputProperties(properties);
+
+		// Each filter receives the output properties of the previous one.
+		for(AudioFilter filter : filters)
+		{
+			filter.setInputProperties(properties);
+			properties = filter.getOutputProperties().copy();
+			properties.DataSize = 0;
+		}
+	}
+
+	/**
+	 * Get the output properties of the last filter.
+	 */
+	@Override
+	public AudioProperties getOutputProperties()
+	{
+		return filters.get(filters.size() - 1).getOutputProperties();
+	}
+
+	// O(n) * O(filters)
+	@Override
+	public byte[] process(byte[] input)
+	{
+		return process(ByteBuffer.wrap(input));
+	}
+
+	// O(n) * O(filters)
+	@Override
+	public byte[] process(ByteBuffer input)
+	{
+		return processAsBlock(input);
+	}
+
+	// O(n) * O(filters)
+	@Override
+	public void process(SampleBlock input, SampleBlock output)
+	{
+		if(input.getFrameCount() == 0)
+		{
+			flush(output);
+			return;
+		}
+
+		SampleBlock block = input;
+
+		for(int i = 0; i < filters.size(); i++)
+		{
+			SampleBlock next = i < blocks.length ? blocks[i] : output;
+
+			filters.get(i).process(block, next);
+			block = next;
+		}
+	}
+
+	// O(n) * O(filters)
+	// Ends the input of each filter in turn. The final frames of a filter are the last input of the next filter,
+	// which is then ended as well.
+	private void flush(SampleBlock output)
+	{
+		SampleBlock pending = new SampleBlock(0, 0);
+
+		for(AudioFilter filter : filters)
+		{
+			SampleBlock frames = flushBlocks[0];
+			SampleBlock finalFrames = flushBlocks[1];
+
+			frames.setFrameCount(0);
+
+			if(pending.getFrameCount() > 0)
+			{
+				filter.process(pending, frames);
+			}
+
+			// An empty block with the number of channels of the filter's input marks its end.
+			pending.reserve(filter.properties.NumChannels, 0);
+			pending.setFrameCount(0);
+			filter.process(pending, finalFrames);
+
+			if(frames.getFrameCount() == 0)
+			{
+				finalFrames.copyTo(pending);
+			}
+			else
+			{
+				frames.copyTo(pending);
+				pending.append(finalFrames);
+			}
+		}
+
+		pending.copyTo(output);
+	}
+}
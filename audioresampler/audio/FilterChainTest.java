@@ -0,0 +1,65 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import audioresampler.audio.AudioProperties.AudioFormat;
+
+public class FilterChainTest
+{
+	@Test
+	public void testSinglePass()
+	{
+		// A chain ending with a neutral gain outputs the same data as its first filter, including the final frames.
+		byte[] expected = filter(new PolyphaseResamplingFilter(96000));
+		byte[] output = filter(new FilterChain(new PolyphaseResamplingFilter(96000), new GainFilter(0)));
+
+		assertArrayEquals(expected, output);
+	}
+
+	@Test
+	public void testFlush()
+	{
+		// The final frames of each filter are passed to the next one at the end of the input.
+		FilterChain chain = new FilterChain(new PolyphaseResamplingFilter(48000), new PolyphaseResamplingFilter(96000));
+		byte[] output = filter(chain);
+
+		AudioProperties properties = chain.getOutputProperties();
+		assertEquals(96000, properties.SampleRate);
+		assertEquals(output.length, properties.DataSize);
+		assertEquals(96000 * 4, output.length);
+	}
+
+	private byte[] filter(AudioFilter filter)
+	{
+		AudioProperties properties = new AudioProperties();
+		properties.Format = AudioFormat.WAVE_PCM;
+		properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+		properties.SampleRate = 44100;
+		properties.BitsPerSample = 16;
+		properties.NumChannels = 2;
+
+		filter.setInputProperties(properties);
+
+		ByteArrayOutputStream output = new ByteArrayOutputStream();
+		byte[] segment = new byte[properties.getFrameSize() * 4410];
+
+		for(int i = 0; i < segment.length; i++)
+		{
+			segment[i] = (byte) (i * 31);
+		}
+
+		for(int i = 0; i < 10; i++)
+		{
+			output.writeBytes(filter.process(segment));
+		}
+
+		output.writeBytes(filter.process(new byte[0]));
+
+		return output.toByteArray();
+	}
+}
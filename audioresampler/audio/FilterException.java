@@ -0,0 +1,32 @@
+package audioresampler.audio;
+
+import java.io.IOException;
+
+/**
+ * Thrown when a filter fails while it is applied to the data, or cannot be applied to it,
+ * so that the output is incomplete. The cause is the exception thrown by the filter, if any.
+ */
+public class FilterException extends IOException
+{
+	private static final long serialVersionUID = 4370924125385620394L;
+	
+	public FilterException()
+	{
+		super();
+	}
+	
+	public FilterException(String message)
+	{
+		super(message);
+	}
+	
+	public FilterException(Throwable cause)
+	{
+		super(cause);
+	}
+	
+	public FilterException(String message, Throwable cause)
+	{
+		super(message, cause);
+	}
+}
@@ -0,0 +1,332 @@
+package audioresampler.audio;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
+
+import audioresampler.io.FileSink;
+import audioresampler.io.FileSource;
+
+/**
+ * Applies a filter to the data read from a source and writes the output to a sink, in three stages
+ * running at the same time: a reader thread decodes segments ahead of the filter, the calling thread
+ * filters them and encodes the output, and a writer thread appends it to the sink behind the filter,
+ * so reading and writing overlap with processing.
+ *
+ * Stages are connected by ring buffers, and the blocks and output buffers are returned to the previous
+ * stage through ring buffers going the other way, so a bounded number of segments is in flight
+ * and buffers are reused once the pipeline is full.
+ *
+ * The time spent by each stage on each segment is reported to a listener, with the number of
+ * segments waiting between stages, which shows which stage the others are waiting for.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+final class FilterPipeline
+{
+	private static final int Depth = 4; // Number of segments buffered between two stages.
+
+	/**
+	 * Encoded output of a segment.
+	 */
+	private static final class OutputBuffer
+	{
+		byte[] data = new byte[0];
+		int length;
+		boolean last; // Whether this is the output of the last empty segment.
+	}
+
+	private final FileSource source;
+	private final FileSink sink;
+	private final AudioProperties properties;
+	private final long dataLength;
+	private final AudioFilter filter;
+	private final Runnable progress;
+	private final ConversionListener listener;
+
+	private final RingBuffer<SampleBlock> freeBlocks = new RingBuffer<SampleBlock>(Depth); // From the filter to the reader.
+	private final RingBuffer<SampleBlock> readBlocks = new RingBuffer<SampleBlock>(Depth); // From the reader to the filter.
+	private final RingBuffer<OutputBuffer> freeBuffers = new RingBuffer<OutputBuffer>(Depth); // From the writer to the filter.
+	private final RingBuffer<OutputBuffer> filteredBuffers = new RingBuffer<OutputBuffer>(Depth); // From the filter to the writer.
+
+	private volatile Throwable readError; // An I/O error, or an unexpected exception or error of the reader.
+	private volatile Throwable writeError; // An I/O error, or an unexpected exception or error of the writer.
+	private volatile long inputFrameCount; // Number of frames read, written by the reader.
+
+	/**
+	 * @param source The source, positioned at the start of the data.
+	 * @param properties The properties of the data.
+	 * @param dataLength The number of bytes of data to read from the source, which may be past its end.
+	 * @param filter The filter, whose input properties are set.
+	 * @param sink The sink, to which the output is appended.
+	 * @param progress Called after each segment is filtered.
+	 * @param listener Receives the measurements of each stage.
+	 */
+	FilterPipeline(FileSource source, AudioProperties properties, long dataLength, AudioFilter filter, FileSink sink,
+			Runnable progress, ConversionListener listener)
+	{
+		this.source = source;
+		this.properties = properties;
+		this.dataLength = dataLength;
+		this.filter = filter;
+		this.sink = sink;
+		this.progress = progress;
+		this.listener = listener;
+
+		for(int i = 0; i < Depth; i++)
+		{
+			freeBlocks.offer(new SampleBlock(properties.NumChannels, properties.SampleRate));
+			freeBuffers.offer(new OutputBuffer());
+		}
+	}
+
+	/**
+	 * Filter all of the data, and return once it is written to the sink.
+	 * Unexpected exceptions and errors of the reader and writer end the output, and are thrown once the pipeline is stopped.
+	 * @throws IOException If the data cannot be read or written.
+	 */
+	void run() throws IOException
+	{
+		Thread reader = new Thread(this::read, "Pipeline Reader");
+		Thread writer = new Thread(this::write, "Pipeline Writer");
+		boolean outputEnded = false;
+
+		reader.setDaemon(true);
+		writer.setDaemon(true);
+		reader.start();
+		writer.start();
+
+		try
+		{
+			filter();
+			outputEnded = true;
+		}
+		catch(RuntimeException e)
+		{
+			// Let the writer complete the output filtered so far.
+			endOutput();
+			outputEnded = true;
+
+			throw e;
+		}
+		catch(InterruptedException e)
+		{
+			throw new InterruptedIOException();
+		}
+		finally
+		{
+			reader.interrupt();
+
+			if(!outputEnded)
+			{
+				writer.interrupt();
+			}
+
+			JoinUninterruptibly(reader);
+			JoinUninterruptibly(writer);
+		}
+
+		ThrowStageError(readError, listener);
+		ThrowStageError(writeError, listener);
+	}
+
+	/**
+	 * Get the number of frames read, once the pipeline has run.
+	 */
+	long getInputFrameCount()
+	{
+		return inputFrameCount;
+	}
+
+	// O(n)
+	// Filters segments until the last empty segment, which ends the input of the filter.
+	private void filter() throws InterruptedException
+	{
+		AudioProperties outProperties = filter.getOutputProperties();
+		SampleCodec outputCodec = SampleCodec.ForProperties(outProperties);
+		SampleBlock outputBlock = new SampleBlock(outProperties.NumChannels, outProperties.SampleRate);
+
+		for(boolean last = false; !last; )
+		{
+			SampleBlock input = readBlocks.take();
+			int inputFrames = input.getFrameCount();
+			last = inputFrames == 0;
+
+			listener.segmentsQueued(readBlocks.size(), filteredBuffers.size(), filteredBuffers.getCapacity());
+
+			long startTime = System.nanoTime();
+
+			filter.process(input, outputBlock);
+			long filterTime = System.nanoTime() - startTime;
+			freeBlocks.put(input);
+
+			// Waiting for a free buffer is not counted as filtering.
+			OutputBuffer buffer = freeBuffers.take();
+			startTime = System.nanoTime();
+			int size = outputBlock.getFrameCount() * outProperties.getFrameSize();
+
+			if(buffer.data.length < size)
+			{
+				buffer.data = new byte[size];
+			}
+
+			buffer.length = outputBlock.encode(outProperties, outputCodec, buffer.data, 0);
+			buffer.last = last;
+
+			listener.segmentFiltered(inputFrames, outputBlock.getFrameCount(), filterTime + System.nanoTime() - startTime);
+			filteredBuffers.put(buffer);
+
+			if(!last)
+			{
+				progress.run();
+			}
+		}
+	}
+
+	private void endOutput()
+	{
+		try
+		{
+			OutputBuffer buffer = freeBuffers.take();
+			buffer.length = 0;
+			buffer.last = true;
+			filteredBuffers.put(buffer);
+		}
+		catch(InterruptedException e)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	// O(n)
+	// Decodes the data by 1 second segments, read as views of the mapped data chunk or of the stream buffer,
+	// and ends with an empty segment. A segment without a whole frame ends the input, as the data chunk is truncated.
+	private void read()
+	{
+		int segmentSize = properties.getFrameSize() * properties.SampleRate;
+		SampleCodec codec = SampleCodec.ForProperties(properties);
+
+		try
+		{
+			long bytesRead = 0;
+			SampleBlock block;
+
+			do
+			{
+				block = freeBlocks.take();
+
+				try
+				{
+					long startTime = System.nanoTime();
+					ByteBuffer segment = source.read((int) Math.min(dataLength - bytesRead, segmentSize));
+					int length = segment.remaining();
+					bytesRead += length;
+
+					block.decode(segment, properties, codec);
+					inputFrameCount += block.getFrameCount();
+
+					listener.segmentRead(length, System.nanoTime() - startTime);
+				}
+				catch(IOException | RuntimeException | Error e)
+				{
+					// End the input, the error is thrown once the pipeline is stopped.
+					readError = e;
+					block.setFrameCount(0);
+				}
+
+				readBlocks.put(block);
+			}
+			while(block.getFrameCount() > 0);
+		}
+		catch(InterruptedException e)
+		{
+			// The pipeline is stopped.
+		}
+	}
+
+	// O(n)
+	// Appends the filtered segments to the sink until the output of the last segment.
+	// Streams are flushed after each segment, so the output reaches the reader as it is filtered.
+	// After an error, buffers are still returned to the filter so that it is not blocked.
+	private void write()
+	{
+		try
+		{
+			boolean last;
+
+			do
+			{
+				OutputBuffer buffer = filteredBuffers.take();
+				last = buffer.last;
+
+				if(writeError == null)
+				{
+					try
+					{
+						long startTime = System.nanoTime();
+
+						sink.push(buffer.data, 0, buffer.length);
+
+						if(!sink.isSeekable())
+						{
+							sink.flush();
+						}
+
+						listener.segmentWritten(buffer.length, System.nanoTime() - startTime);
+					}
+					catch(IOException | RuntimeException | Error e)
+					{
+						writeError = e;
+					}
+				}
+
+				freeBuffers.put(buffer);
+			}
+			while(!last);
+		}
+		catch(InterruptedException e)
+		{
+			// The pipeline is stopped.
+		}
+	}
+
+	// Throws the error of a stage if there is one, and reports I/O errors to the listener.
+	private static void ThrowStageError(Throwable error, ConversionListener listener) throws IOException
+	{
+		if(error instanceof IOException)
+		{
+			listener.ioError((IOException) error);
+			throw (IOException) error;
+		}
+		else if(error instanceof RuntimeException)
+		{
+			throw (RuntimeException) error;
+		}
+		else if(error instanceof Error)
+		{
+			throw (Error) error;
+		}
+	}
+
+	private static void JoinUninterruptibly(Thread thread)
+	{
+		boolean interrupted = false;
+
+		while(thread.isAlive())
+		{
+			try
+			{
+				thread.join();
+			}
+			catch(InterruptedException e)
+			{
+				interrupted = true;
+			}
+		}
+
+		if(interrupted)
+		{
+			Thread.currentThread().interrupt();
+		}
+	}
+}
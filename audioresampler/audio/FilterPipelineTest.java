@@ -0,0 +1,76 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import audioresampler.audio.AudioProperties.AudioFormat;
+import audioresampler.io.FileSink;
+import audioresampler.io.FileSource;
+
+public class FilterPipelineTest
+{
+	@Test(timeout = 10000)
+	public void testStageErrors() throws Exception
+	{
+		// Unexpected exceptions of the reader and writer end the output instead of blocking the filter,
+		// and are thrown once the pipeline is stopped.
+		InputStream failingInput = new InputStream()
+		{
+			private int remaining = 8000 * 4 * 2;
+
+			@Override
+			public int read()
+			{
+				if(remaining-- == 0)
+				{
+					throw new IllegalStateException("read");
+				}
+
+				return 0;
+			}
+		};
+
+		OutputStream failingOutput = new OutputStream()
+		{
+			@Override
+			public void write(int b)
+			{
+				throw new IllegalStateException("write");
+			}
+		};
+
+		assertEquals("read", runFailing(new FileSource(failingInput), new FileSink(new ByteArrayOutputStream())));
+		assertEquals("write", runFailing(new FileSource(new ByteArrayInputStream(new byte[8000 * 4 * 2])), new FileSink(failingOutput)));
+	}
+
+	private static String runFailing(FileSource source, FileSink sink) throws Exception
+	{
+		AudioProperties properties = new AudioProperties();
+		properties.Format = AudioFormat.WAVE_PCM;
+		properties.NumChannels = 2;
+		properties.SampleRate = 8000;
+		properties.BitsPerSample = 16;
+		properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+
+		AudioFilter filter = new FastResamplingFilter(16000);
+		filter.setInputProperties(properties);
+
+		try
+		{
+			new FilterPipeline(source, properties, Long.MAX_VALUE, filter, sink, () -> {}, new ConversionListener() {}).run();
+		}
+		catch(IllegalStateException e)
+		{
+			return e.getMessage();
+		}
+
+		return null;
+	}
+}
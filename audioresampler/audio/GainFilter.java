@@ -0,0 +1,72 @@
+package audioresampler.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A filter which changes the level of audio data by a gain in decibels.
+ * Integer samples which exceed the range of the bit depth are clipped.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public class GainFilter extends AudioFilter
+{
+	private final double gain; // Linear factor applied to the samples.
+
+	public GainFilter(double decibels)
+	{
+		super();
+
+		gain = Math.pow(10, decibels / 20);
+	}
+
+	public double getGain()
+	{
+		return gain;
+	}
+
+	@Override
+	public void setInputProperties(AudioProperties properties)
+	{
+		super.setInputProperties(properties);
+
+		outProperties = properties.copy();
+		outProperties.DataSize = 0;
+	}
+
+	// O(n)
+	@Override
+	public byte[] process(byte[] input)
+	{
+		return process(ByteBuffer.wrap(input));
+	}
+
+	// O(n)
+	@Override
+	public byte[] process(ByteBuffer input)
+	{
+		return processAsBlock(input);
+	}
+
+	// O(n)
+	@Override
+	public void process(SampleBlock input, SampleBlock output)
+	{
+		int frameCount = input.getFrameCount();
+
+		output.reserve(input.getNumChannels(), frameCount);
+		output.setFrameCount(frameCount);
+
+		for(int channel = 0; channel < input.getNumChannels(); channel++)
+		{
+			float[] samples = input.getChannel(channel);
+			float[] outputSamples = output.getChannel(channel);
+
+			for(int frame = 0; frame < frameCount; frame++)
+			{
+				outputSamples[frame] = (float) (samples[frame] * gain);
+			}
+		}
+
+		outProperties.DataSize += frameCount * outProperties.getFrameSize();
+	}
+}
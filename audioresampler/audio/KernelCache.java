@@ -0,0 +1,206 @@
+package audioresampler.audio;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+import audioresampler.audio.PolyphaseResamplingFilter.Quality;
+
+/**
+ * A process-wide, bounded cache of prepared resampling kernels,
+ * so that filters converting between the same sample rates share
+ * a single coefficient table instead of recomputing it for each file.
+ *
+ * Kernels are keyed by input and output sample rates, quality and bits per sample,
+ * which set the range output samples are clipped to,
+ * and the least recently used kernel is evicted when the cache is full.
+ * The cache is thread-safe, and a kernel is computed at most once
+ * even when several threads request it concurrently.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public final class KernelCache
+{
+	private static final int DefaultCapacity = 16;
+	private static final KernelCache Instance = new KernelCache(DefaultCapacity);
+
+	private final LinkedHashMap<Key, Entry> entries;
+	private int capacity;
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	KernelCache(int capacity)
+	{
+		if(capacity < 1)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.capacity = capacity;
+
+		// Iterate in access order, so that the eldest entry is the least recently used.
+		entries = new LinkedHashMap<Key, Entry>(16, 0.75f, true)
+		{
+			private static final long serialVersionUID = 1L;
+
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<Key, Entry> eldest)
+			{
+				if(size() > KernelCache.this.capacity)
+				{
+					evictions++;
+					return true;
+				}
+
+				return false;
+			}
+		};
+	}
+
+	public static KernelCache getInstance()
+	{
+		return Instance;
+	}
+
+	// O(L * taps) on a miss, O(1) on a hit
+	PolyphaseKernel getKernel(int inSampleRate, int outSampleRate, Quality quality, short bitsPerSample)
+	{
+		Key key = new Key(inSampleRate, outSampleRate, quality, bitsPerSample);
+		Entry entry;
+
+		synchronized(this)
+		{
+			entry = entries.get(key);
+
+			if(entry == null)
+			{
+				misses++;
+				entry = new Entry(key);
+				entries.put(key, entry);
+			}
+			else
+			{
+				hits++;
+			}
+		}
+
+		// Compute the kernel outside of the cache lock, so that lookups for other keys are not blocked.
+		return entry.getKernel();
+	}
+
+	public synchronized void setCapacity(int capacity)
+	{
+		if(capacity < 1)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.capacity = capacity;
+
+		// Evict the least recently used entries beyond the new capacity.
+		while(entries.size() > capacity)
+		{
+			entries.remove(entries.keySet().iterator().next());
+			evictions++;
+		}
+	}
+
+	public synchronized int getCapacity()
+	{
+		return capacity;
+	}
+
+	public synchronized int getSize()
+	{
+		return entries.size();
+	}
+
+	public synchronized long getHits()
+	{
+		return hits;
+	}
+
+	public synchronized long getMisses()
+	{
+		return misses;
+	}
+
+	public synchronized long getEvictions()
+	{
+		return evictions;
+	}
+
+	public synchronized void clear()
+	{
+		entries.clear();
+		hits = 0;
+		misses = 0;
+		evictions = 0;
+	}
+
+	@Override
+	public synchronized String toString()
+	{
+		return String.format("Kernel Cache: %d hits, %d misses, %d evictions, %d/%d kernels",
+				hits, misses, evictions, entries.size(), capacity);
+	}
+
+	private static final class Key
+	{
+		private final int inSampleRate;
+		private final int outSampleRate;
+		private final Quality quality;
+		private final short bitsPerSample;
+
+		private Key(int inSampleRate, int outSampleRate, Quality quality, short bitsPerSample)
+		{
+			this.inSampleRate = inSampleRate;
+			this.outSampleRate = outSampleRate;
+			this.quality = quality;
+			this.bitsPerSample = bitsPerSample;
+		}
+
+		@Override
+		public boolean equals(Object other)
+		{
+			if(!(other instanceof Key))
+			{
+				return false;
+			}
+
+			Key key = (Key) other;
+
+			return inSampleRate == key.inSampleRate && outSampleRate == key.outSampleRate
+					&& quality == key.quality && bitsPerSample == key.bitsPerSample;
+		}
+
+		@Override
+		public int hashCode()
+		{
+			return ((inSampleRate * 31 + outSampleRate) * 31 + quality.hashCode()) * 31 + bitsPerSample;
+		}
+	}
+
+	// Holds a kernel which is computed on first access.
+	private static final class Entry
+	{
+		private final Key key;
+		private PolyphaseKernel kernel;
+
+		private Entry(Key key)
+		{
+			this.key = key;
+		}
+
+		private synchronized PolyphaseKernel getKernel()
+		{
+			if(kernel == null)
+			{
+				kernel = new PolyphaseKernel(key.inSampleRate, key.outSampleRate, key.bitsPerSample,
+						key.quality.getTaps(), key.quality.getBeta(), key.quality.getCutoff());
+			}
+
+			return kernel;
+		}
+	}
+}
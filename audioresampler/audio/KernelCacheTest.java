@@ -0,0 +1,43 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+import audioresampler.audio.PolyphaseResamplingFilter.Quality;
+
+public class KernelCacheTest
+{
+	@Test
+	public void testSharing()
+	{
+		KernelCache cache = new KernelCache(4);
+
+		PolyphaseKernel kernel = cache.getKernel(44100, 48000, Quality.LOW, (short) 16);
+		assertSame(kernel, cache.getKernel(44100, 48000, Quality.LOW, (short) 16));
+		assertNotSame(kernel, cache.getKernel(44100, 48000, Quality.HIGH, (short) 16));
+		assertNotSame(kernel, cache.getKernel(44100, 48000, Quality.LOW, (short) 24));
+
+		assertEquals(1, cache.getHits());
+		assertEquals(3, cache.getMisses());
+		assertEquals(3, cache.getSize());
+	}
+
+	@Test
+	public void testEviction()
+	{
+		KernelCache cache = new KernelCache(2);
+
+		PolyphaseKernel first = cache.getKernel(44100, 48000, Quality.LOW, (short) 16);
+		PolyphaseKernel second = cache.getKernel(48000, 16000, Quality.LOW, (short) 16);
+
+		// Use the first kernel, so that the second is the least recently used.
+		cache.getKernel(44100, 48000, Quality.LOW, (short) 16);
+		cache.getKernel(44100, 8000, Quality.LOW, (short) 16);
+
+		assertEquals(1, cache.getEvictions());
+		assertSame(first, cache.getKernel(44100, 48000, Quality.LOW, (short) 16));
+		assertNotSame(second, cache.getKernel(48000, 16000, Quality.LOW, (short) 16));
+		assertEquals(2, cache.getSize());
+	}
+}
@@ -38,7 +38,8 @@ final class MathHelper
 			return b;
 		}
 		
-		return (int) Math.round(a + ((b - a) * distance));
+		// The difference is computed in floating point, as it can overflow for 32-bit samples.
+		return (int) Math.round(a + (((double)b - a) * distance));
 	}
 	
 	public static double Round(double value, int decimalPlaces)
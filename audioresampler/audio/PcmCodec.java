@@ -0,0 +1,381 @@
+package audioresampler.audio;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts PCM samples of one bit depth and byte order between bytes and integers or floats,
+ * a value or a whole range at a time, without allocating.
+ *
+ * 8-bit samples are unsigned, and 16-bit, 24-bit and 32-bit samples are signed. Bit depths which
+ * are not a multiple of 8 are stored in the next whole number of bytes.
+ * Integer values are the samples as stored. Float values are centered on 0, so unsigned samples
+ * are offset by -128, and are rounded to the nearest integer and clipped to the bit depth when encoded,
+ * as in {@link SampleBlock}.
+ * A codec can also be for 32-bit IEEE floating point samples, which are decoded and encoded
+ * to floats as is. Their integer values are the bits of the floats.
+ *
+ * Ranges of samples are read and written with a stride in bytes, which is the sample size
+ * for contiguous samples, or the frame size for the samples of one channel in interleaved frames.
+ * Multibyte values are accessed through byte array and byte buffer view handles.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+final class PcmCodec
+{
+	private static final VarHandle ShortLE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle ShortBE = MethodHandles.byteArrayViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle IntLE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle IntBE = MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle BufferShortLE = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle BufferShortBE = MethodHandles.byteBufferViewVarHandle(short[].class, ByteOrder.BIG_ENDIAN);
+	private static final VarHandle BufferIntLE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+	private static final VarHandle BufferIntBE = MethodHandles.byteBufferViewVarHandle(int[].class, ByteOrder.BIG_ENDIAN);
+
+	private final int sampleSize;
+	private final boolean littleEndian;
+	private final boolean floatingPoint;
+	private final int bias;
+	private final int minValue;
+	private final int maxValue;
+
+	PcmCodec(int bitsPerSample, ByteOrder byteOrder)
+	{
+		this(bitsPerSample, byteOrder, false);
+	}
+
+	PcmCodec(int bitsPerSample, ByteOrder byteOrder, boolean floatingPoint)
+	{
+		if(floatingPoint && bitsPerSample != 32)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		sampleSize = (bitsPerSample + 7) / 8;
+		littleEndian = byteOrder == ByteOrder.LITTLE_ENDIAN;
+		this.floatingPoint = floatingPoint;
+		bias = SampleBlock.GetBias(bitsPerSample);
+		maxValue = (int) ((1L << (bitsPerSample - 1)) - 1);
+		minValue = -maxValue - 1;
+	}
+
+	PcmCodec(AudioProperties properties)
+	{
+		this(properties.BitsPerSample, properties.ByteOrder, properties.isFloatingPoint());
+	}
+
+	/**
+	 * Get the number of bytes per sample.
+	 */
+	int getSampleSize()
+	{
+		return sampleSize;
+	}
+
+	// O(1)
+	/**
+	 * Read the sample at a position in bytes in an array.
+	 */
+	int get(byte[] data, int position)
+	{
+		switch(sampleSize)
+		{
+			case 1:
+				return data[position] & 0xff;
+			case 2:
+				return GetShort(data, position, littleEndian);
+			case 3:
+				return Get24(data, position, littleEndian);
+			default:
+				return GetInt(data, position, littleEndian);
+		}
+	}
+
+	// O(1)
+	/**
+	 * Read the sample at a position in bytes in a buffer, regardless of its position and byte order.
+	 */
+	int get(ByteBuffer data, int position)
+	{
+		switch(sampleSize)
+		{
+			case 1:
+				return data.get(position) & 0xff;
+			case 2:
+				return GetShort(data, position, littleEndian);
+			case 3:
+				return Get24(data, position, littleEndian);
+			default:
+				return GetInt(data, position, littleEndian);
+		}
+	}
+
+	// O(1)
+	/**
+	 * Write the low bytes of a sample at a position in bytes in an array.
+	 */
+	void put(byte[] data, int position, int value)
+	{
+		switch(sampleSize)
+		{
+			case 1:
+				data[position] = (byte) value;
+				break;
+			case 2:
+				PutShort(data, position, value, littleEndian);
+				break;
+			case 3:
+				Put24(data, position, value, littleEndian);
+				break;
+			default:
+				PutInt(data, position, value, littleEndian);
+				break;
+		}
+	}
+
+	// O(n)
+	/**
+	 * Decode samples as stored from a position in bytes in a buffer, regardless of its position and byte order.
+	 */
+	void decode(ByteBuffer input, int position, int stride, int count, int[] output, int outputOffset)
+	{
+		// The sample size is checked once per range, so each loop only converts.
+		switch(sampleSize)
+		{
+			case 1:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[outputOffset + i] = input.get(position) & 0xff;
+				}
+				break;
+			case 2:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[outputOffset + i] = GetShort(input, position, littleEndian);
+				}
+				break;
+			case 3:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[outputOffset + i] = Get24(input, position, littleEndian);
+				}
+				break;
+			default:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[outputOffset + i] = GetInt(input, position, littleEndian);
+				}
+				break;
+		}
+	}
+
+	// O(n)
+	/**
+	 * Decode samples centered on 0 from a position in bytes in a buffer, regardless of its position and byte order.
+	 */
+	void decode(ByteBuffer input, int position, int stride, int count, float[] output, int outputOffset)
+	{
+		if(floatingPoint)
+		{
+			for(int i = 0; i < count; i++, position += stride)
+			{
+				output[outputOffset + i] = Float.intBitsToFloat(GetInt(input, position, littleEndian));
+			}
+
+			return;
+		}
+
+		switch(sampleSize)
+		{
+			case 1:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[outputOffset + i] = (input.get(position) & 0xff) - bias;
+				}
+				break;
+			case 2:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[outputOffset + i] = GetShort(input, position, littleEndian);
+				}
+				break;
+			case 3:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[outputOffset + i] = Get24(input, position, littleEndian);
+				}
+				break;
+			default:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[outputOffset + i] = GetInt(input, position, littleEndian);
+				}
+				break;
+		}
+	}
+
+	// O(n)
+	/**
+	 * Encode the low bytes of samples as stored to an array from a position in bytes.
+	 */
+	void encode(int[] input, int inputOffset, int count, byte[] output, int position, int stride)
+	{
+		switch(sampleSize)
+		{
+			case 1:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[position] = (byte) input[inputOffset + i];
+				}
+				break;
+			case 2:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					PutShort(output, position, input[inputOffset + i], littleEndian);
+				}
+				break;
+			case 3:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					Put24(output, position, input[inputOffset + i], littleEndian);
+				}
+				break;
+			default:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					PutInt(output, position, input[inputOffset + i], littleEndian);
+				}
+				break;
+		}
+	}
+
+	// O(n)
+	/**
+	 * Encode samples centered on 0 to an array from a position in bytes.
+	 * Integer samples are rounded to the nearest integer and clipped to the range of the bit depth,
+	 * and floating point samples are neither rounded nor clipped.
+	 */
+	void encode(float[] input, int inputOffset, int count, byte[] output, int position, int stride)
+	{
+		if(floatingPoint)
+		{
+			for(int i = 0; i < count; i++, position += stride)
+			{
+				PutInt(output, position, Float.floatToRawIntBits(input[inputOffset + i]), littleEndian);
+			}
+
+			return;
+		}
+
+		switch(sampleSize)
+		{
+			case 1:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					output[position] = (byte) (Clip(input[inputOffset + i], minValue, maxValue) + bias);
+				}
+				break;
+			case 2:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					PutShort(output, position, Clip(input[inputOffset + i], minValue, maxValue), littleEndian);
+				}
+				break;
+			case 3:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					Put24(output, position, Clip(input[inputOffset + i], minValue, maxValue), littleEndian);
+				}
+				break;
+			default:
+				for(int i = 0; i < count; i++, position += stride)
+				{
+					PutInt(output, position, Clip(input[inputOffset + i], minValue, maxValue), littleEndian);
+				}
+				break;
+		}
+	}
+
+	private static int Clip(float sample, int minValue, int maxValue)
+	{
+		return Math.max(minValue, Math.min(maxValue, Math.round(sample)));
+	}
+
+	// The byte order is the same for a whole range, so its branch is hoisted out of the loops.
+	// Codecs for a single format call these with a constant byte order.
+
+	static int GetShort(byte[] data, int position, boolean littleEndian)
+	{
+		return littleEndian ? (short) ShortLE.get(data, position) : (short) ShortBE.get(data, position);
+	}
+
+	static int GetShort(ByteBuffer data, int position, boolean littleEndian)
+	{
+		return littleEndian ? (short) BufferShortLE.get(data, position) : (short) BufferShortBE.get(data, position);
+	}
+
+	static int GetInt(byte[] data, int position, boolean littleEndian)
+	{
+		return littleEndian ? (int) IntLE.get(data, position) : (int) IntBE.get(data, position);
+	}
+
+	static int GetInt(ByteBuffer data, int position, boolean littleEndian)
+	{
+		return littleEndian ? (int) BufferIntLE.get(data, position) : (int) BufferIntBE.get(data, position);
+	}
+
+	// The high byte is sign extended, and the two low bytes are read as one masked short.
+	static int Get24(byte[] data, int position, boolean littleEndian)
+	{
+		return littleEndian ?
+				data[position + 2] << 16 | (short) ShortLE.get(data, position) & 0xffff :
+				data[position] << 16 | (short) ShortBE.get(data, position + 1) & 0xffff;
+	}
+
+	static int Get24(ByteBuffer data, int position, boolean littleEndian)
+	{
+		return littleEndian ?
+				data.get(position + 2) << 16 | (short) BufferShortLE.get(data, position) & 0xffff :
+				data.get(position) << 16 | (short) BufferShortBE.get(data, position + 1) & 0xffff;
+	}
+
+	static void PutShort(byte[] data, int position, int value, boolean littleEndian)
+	{
+		if(littleEndian)
+		{
+			ShortLE.set(data, position, (short) value);
+		}
+		else
+		{
+			ShortBE.set(data, position, (short) value);
+		}
+	}
+
+	static void PutInt(byte[] data, int position, int value, boolean littleEndian)
+	{
+		if(littleEndian)
+		{
+			IntLE.set(data, position, value);
+		}
+		else
+		{
+			IntBE.set(data, position, value);
+		}
+	}
+
+	static void Put24(byte[] data, int position, int value, boolean littleEndian)
+	{
+		if(littleEndian)
+		{
+			ShortLE.set(data, position, (short) value);
+			data[position + 2] = (byte) (value >> 16);
+		}
+		else
+		{
+			data[position] = (byte) (value >> 16);
+			ShortBE.set(data, position + 1, (short) value);
+		}
+	}
+}
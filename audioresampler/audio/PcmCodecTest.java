@@ -0,0 +1,80 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+public class PcmCodecTest
+{
+	@Test
+	public void testByteOrder()
+	{
+		byte[] data = { 0x01, 0x02, (byte) 0x83, 0x04 };
+
+		assertEquals(0x01, new PcmCodec(8, ByteOrder.LITTLE_ENDIAN).get(data, 0));
+		assertEquals(0x0201, new PcmCodec(16, ByteOrder.LITTLE_ENDIAN).get(data, 0));
+		assertEquals(0x0102, new PcmCodec(16, ByteOrder.BIG_ENDIAN).get(data, 0));
+		assertEquals(0xff830201, new PcmCodec(24, ByteOrder.LITTLE_ENDIAN).get(data, 0)); // Sign extended
+		assertEquals(0x010283, new PcmCodec(24, ByteOrder.BIG_ENDIAN).get(data, 0));
+		assertEquals(0x04830201, new PcmCodec(32, ByteOrder.LITTLE_ENDIAN).get(ByteBuffer.wrap(data), 0));
+		assertEquals(0x01028304, new PcmCodec(32, ByteOrder.BIG_ENDIAN).get(ByteBuffer.wrap(data), 0));
+	}
+
+	@Test
+	public void testRoundTrip()
+	{
+		// Samples of one channel are read and written with the stride of interleaved frames.
+		for(ByteOrder byteOrder : new ByteOrder[] { ByteOrder.LITTLE_ENDIAN, ByteOrder.BIG_ENDIAN })
+		{
+			for(int bitsPerSample = 8; bitsPerSample <= 32; bitsPerSample += 8)
+			{
+				PcmCodec codec = new PcmCodec(bitsPerSample, byteOrder);
+				int stride = codec.getSampleSize() * 2;
+				byte[] data = new byte[stride * 50];
+
+				for(int i = 0; i < data.length; i++)
+				{
+					data[i] = (byte) (i * 37);
+				}
+
+				int[] samples = new int[50];
+				byte[] output = data.clone();
+				codec.decode(ByteBuffer.wrap(data), codec.getSampleSize(), stride, 50, samples, 0);
+
+				for(int i = 0; i < 50; i++)
+				{
+					assertEquals(codec.get(data, codec.getSampleSize() + i * stride), samples[i]);
+					samples[i] = ~samples[i];
+				}
+
+				codec.encode(samples, 0, 50, output, codec.getSampleSize(), stride);
+
+				for(int i = 0; i < data.length; i++)
+				{
+					boolean written = i / codec.getSampleSize() % 2 == 1;
+
+					assertEquals(written ? (byte) ~data[i] : data[i], output[i]);
+				}
+			}
+		}
+	}
+
+	@Test
+	public void testFloatingPoint()
+	{
+		// Floating point samples are encoded as is, without rounding or clipping.
+		PcmCodec codec = new PcmCodec(32, ByteOrder.LITTLE_ENDIAN, true);
+		float[] samples = { 0.25f, -1.5f, 1e-9f, 3.75f };
+		float[] decoded = new float[4];
+		byte[] data = new byte[16];
+
+		codec.encode(samples, 0, 4, data, 0, 4);
+		codec.decode(ByteBuffer.wrap(data), 0, 4, 4, decoded, 0);
+
+		assertArrayEquals(samples, decoded, 0);
+		assertEquals(Float.floatToRawIntBits(-1.5f), codec.get(data, 4));
+	}
+}
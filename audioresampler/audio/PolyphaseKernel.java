@@ -0,0 +1,125 @@
+package audioresampler.audio;
+
+/**
+ * A table of Kaiser-windowed sinc coefficients for polyphase resampling
+ * by a rational ratio. The table is immutable once computed and holds one
+ * row of coefficients per output phase, so that each output sample is a
+ * dot product of a fixed number of taps with the input frames around it.
+ * Kernels are prepared for a sample depth, which sets the range
+ * output samples are clipped to. Unsigned samples are centered on 0
+ * by the codecs, so kernels do not depend on their signedness.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+final class PolyphaseKernel
+{
+	private final int interpolation; // Number of phases (L), the output rate divided by the rates' GCD.
+	private final int decimation; // Input frames per L output frames (M), the input rate divided by the rates' GCD.
+	private final int taps; // Number of coefficients per phase, always even.
+	private final float[] coefficients; // Phase-major coefficient rows, interpolation * taps values.
+	private final int minValue; // Lowest sample value of the format, once centered on 0.
+	private final int maxValue; // Highest sample value of the format, once centered on 0.
+
+	// O(L * taps)
+	PolyphaseKernel(int inSampleRate, int outSampleRate, int bitsPerSample, int baseTaps, double beta, double cutoff)
+	{
+		maxValue = (1 << (bitsPerSample - 1)) - 1;
+		minValue = -maxValue - 1;
+
+		int gcd = MathHelper.GreatestCommonDivisor(inSampleRate, outSampleRate);
+		interpolation = outSampleRate / gcd;
+		decimation = inSampleRate / gcd;
+
+		// When downsampling, the cutoff is lowered to the output Nyquist frequency,
+		// which widens the sinc lobes, so the kernel must span proportionally more input frames.
+		double scale = Math.min(1.0, (double)interpolation / decimation);
+		double frequency = cutoff * scale;
+		taps = 2 * (int) Math.ceil(baseTaps / scale / 2);
+
+		coefficients = new float[interpolation * taps];
+
+		double halfLength = taps / 2.0;
+		double windowNormalization = BesselI0(beta);
+
+		for(int phase = 0; phase < interpolation; phase++)
+		{
+			// Fractional position of the output frame past the input frame it follows.
+			double fraction = (double)phase / interpolation;
+			double[] row = new double[taps];
+			double sum = 0;
+
+			for(int tap = 0; tap < taps; tap++)
+			{
+				// Distance from the output position to the input frame multiplied by this tap.
+				double distance = tap - halfLength + 1 - fraction;
+				double ratio = distance / halfLength;
+				double window = Math.abs(ratio) >= 1 ? 0 : BesselI0(beta * Math.sqrt(1 - ratio * ratio)) / windowNormalization;
+
+				row[tap] = frequency * Sinc(frequency * distance) * window;
+				sum += row[tap];
+			}
+
+			// Normalize each phase to unity gain to avoid a ripple at the phase rate.
+			for(int tap = 0; tap < taps; tap++)
+			{
+				coefficients[phase * taps + tap] = (float) (row[tap] / sum);
+			}
+		}
+	}
+
+	int getInterpolation()
+	{
+		return interpolation;
+	}
+
+	int getDecimation()
+	{
+		return decimation;
+	}
+
+	int getTaps()
+	{
+		return taps;
+	}
+
+	float[] getCoefficients()
+	{
+		return coefficients;
+	}
+
+	int getMinValue()
+	{
+		return minValue;
+	}
+
+	int getMaxValue()
+	{
+		return maxValue;
+	}
+
+	private static double Sinc(double x)
+	{
+		if(x == 0)
+		{
+			return 1;
+		}
+
+		return Math.sin(Math.PI * x) / (Math.PI * x);
+	}
+
+	// Zeroth order modified Bessel function of the first kind, by its power series.
+	private static double BesselI0(double x)
+	{
+		double sum = 1;
+		double term = 1;
+		double halfX = x / 2;
+
+		for(int k = 1; k < 50 && term > sum * 1e-16; k++)
+		{
+			term *= (halfX / k) * (halfX / k);
+			sum += term;
+		}
+
+		return sum;
+	}
+}
@@ -0,0 +1,442 @@
+package audioresampler.audio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A band-limited resampling filter using a polyphase windowed-sinc kernel.
+ *
+ * The resampling ratio is reduced to L/M using the greatest common divisor of the sample rates,
+ * and the kernel holds one row of coefficients for each of the L output phases,
+ * so each output sample is a dot product of a fixed number of taps with the surrounding input frames.
+ * Higher qualities use more taps, trading processing time for stopband attenuation.
+ * Kernels are shared between filters through the {@link KernelCache}.
+ * Output frames only depend on the input frames around their position,
+ * so the filter supports random access.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public class PolyphaseResamplingFilter extends ResamplingFilter implements RandomAccessFilter
+{
+	public static enum Quality
+	{
+		LOW(16, 5.65, 0.85), // About 60 dB of stopband attenuation
+		MEDIUM(32, 7.86, 0.9), // About 80 dB of stopband attenuation
+		HIGH(64, 10.06, 0.95); // About 100 dB of stopband attenuation
+
+		private final int taps; // Number of taps per phase when upsampling, scaled up by the ratio when downsampling.
+		private final double beta; // Kaiser window shape parameter.
+		private final double cutoff; // Passband edge as a fraction of the lowest Nyquist frequency.
+
+		private Quality(int taps, double beta, double cutoff)
+		{
+			this.taps = taps;
+			this.beta = beta;
+			this.cutoff = cutoff;
+		}
+
+		public int getTaps()
+		{
+			return taps;
+		}
+
+		double getBeta()
+		{
+			return beta;
+		}
+
+		double getCutoff()
+		{
+			return cutoff;
+		}
+	};
+
+	private static final int MaxPhases = 4096; // Limits the size of the coefficient table for ratios that do not reduce well.
+
+	private final Quality quality;
+	private PolyphaseKernel kernel;
+	private final SampleKernels kernels = SampleKernels.getInstance();
+	private SampleCodec outputCodec; // Selected for the output format.
+
+	private float[][] window; // Decoded input frames per channel, used as the history of the kernel.
+	private long windowStart; // Absolute index of the first frame in the window, negative for the initial silence.
+	private int windowFrames; // Number of frames in the window.
+	private long inputFrameCount; // Total number of input frames received.
+	private long outputFrame; // Absolute index of the next output frame.
+
+	public PolyphaseResamplingFilter(int outSampleRate)
+	{
+		this(outSampleRate, Quality.MEDIUM);
+	}
+
+	public PolyphaseResamplingFilter(int outSampleRate, Quality quality)
+	{
+		super(outSampleRate);
+
+		if(quality == null)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.quality = quality;
+	}
+
+	public Quality getQuality()
+	{
+		return quality;
+	}
+
+	/**
+	 * @throws IllegalArgumentException If the ratio of the sample rates does not reduce to at most 4096 phases.
+	 */
+	@Override
+	public void setInputProperties(AudioProperties properties)
+	{
+		super.setInputProperties(properties);
+
+		outputCodec = SampleCodec.ForProperties(outProperties);
+		kernel = null;
+
+		if(properties.SampleRate > 0 && outProperties.SampleRate > 0 && properties.SampleRate != outProperties.SampleRate)
+		{
+			int gcd = MathHelper.GreatestCommonDivisor(properties.SampleRate, outProperties.SampleRate);
+
+			if(outProperties.SampleRate / gcd > MaxPhases)
+			{
+				throw new IllegalArgumentException("No polyphase kernel from " + properties.SampleRate + " Hz to " + outProperties.SampleRate
+						+ " Hz, whose ratio needs " + outProperties.SampleRate / gcd + " phases, more than " + MaxPhases);
+			}
+
+			kernel = KernelCache.getInstance().getKernel(properties.SampleRate, outProperties.SampleRate,
+					quality, properties.BitsPerSample);
+		}
+
+		// Start with silence before the first frame so that the kernel is centered on it.
+		int history = kernel == null ? 0 : kernel.getTaps() / 2 - 1;
+
+		window = new float[outProperties.NumChannels][history];
+		windowStart = -history;
+		windowFrames = history;
+		inputFrameCount = 0;
+		outputFrame = 0;
+	}
+
+	// O(n) * O(taps)
+	// Replaces the deprecated implementation of the reference filter, and is not deprecated itself.
+	@Override
+	@SuppressWarnings("deprecation")
+	public byte[] process(byte[] input)
+	{
+		return process(ByteBuffer.wrap(input));
+	}
+
+	// O(n) * O(taps)
+	@Override
+	public byte[] process(ByteBuffer input)
+	{
+		validateProcessing();
+
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			if(isConvertingFrames())
+			{
+				// Only the sample format or channels change.
+				return processAsBlock(input);
+			}
+
+			// No processing needed.
+			byte[] data = new byte[input.remaining()];
+			input.duplicate().get(data);
+
+			outProperties.DataSize += data.length;
+			return data;
+		}
+
+		int inputFrames = input.remaining() / properties.getFrameSize();
+		boolean flush = !input.hasRemaining();
+
+		if(!flush)
+		{
+			ensureWindowCapacity(windowFrames + inputFrames);
+			decodeFrames(input, 0, inputFrames, window, windowFrames);
+		}
+
+		SampleBlock outputBlock = blockPool.acquire(outProperties.NumChannels, 0);
+
+		processWindow(inputFrames, flush, outputBlock);
+		byte[] output = outputBlock.encode(outProperties, outputCodec);
+
+		blockPool.release(outputBlock);
+
+		return output;
+	}
+
+	// O(n) * O(taps)
+	@Override
+	public void process(SampleBlock input, SampleBlock output)
+	{
+		validateProcessing();
+
+		SampleBlock mixed = mixChannels(input);
+
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			// No processing needed, other than changing the sample format or channels.
+			if(isRequantizing())
+			{
+				requantize(mixed, output, outputFrame);
+			}
+			else
+			{
+				mixed.copyTo(output);
+			}
+
+			outputFrame += input.getFrameCount();
+			outProperties.DataSize += input.getFrameCount() * outProperties.getFrameSize();
+			releaseMixedBlock(input, mixed);
+			return;
+		}
+
+		int inputFrames = input.getFrameCount();
+		ensureWindowCapacity(windowFrames + inputFrames);
+
+		for(int channel = 0; channel < window.length; channel++)
+		{
+			System.arraycopy(mixed.getChannel(channel), 0, window[channel], windowFrames, inputFrames);
+		}
+
+		releaseMixedBlock(input, mixed);
+		processWindow(inputFrames, inputFrames == 0, output);
+	}
+
+	private void validateProcessing()
+	{
+		if(!validateInputParameters(0, 32))
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		if(kernel == null && outProperties.SampleRate != properties.SampleRate)
+		{
+			// No kernel was prepared for the input properties.
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	// O(n) * O(taps)
+	// Computes the output frames available once input frames are decoded past the end of the window,
+	// or once the input ends, and discards the frames which are no longer needed.
+	private void processWindow(int inputFrames, boolean flush, SampleBlock output)
+	{
+		int halfTaps = kernel.getTaps() / 2;
+
+		// Add the input frames to the window, or silence past the end of the input on the last empty segment.
+		if(flush)
+		{
+			ensureWindowCapacity(windowFrames + halfTaps);
+
+			for(float[] channel : window)
+			{
+				Arrays.fill(channel, windowFrames, windowFrames + halfTaps, 0);
+			}
+
+			windowFrames += halfTaps;
+		}
+		else
+		{
+			windowFrames += inputFrames;
+			inputFrameCount += inputFrames;
+		}
+
+		// The last input frame an output frame can be located after.
+		// Half of the taps must be available past it, and output stops at the end of the input.
+		long lastFrame = flush ? inputFrameCount - 1 : windowStart + windowFrames - 1 - halfTaps;
+		long endFrame = Math.floorDiv((lastFrame + 1) * kernel.getInterpolation() + kernel.getDecimation() - 1, kernel.getDecimation());
+		int frameCount = (int) Math.max(0, endFrame - outputFrame);
+
+		output.reserve(outProperties.NumChannels, frameCount);
+		output.setFrameCount(frameCount);
+
+		resample(window, windowStart, outputFrame, frameCount, output, 0);
+		outputFrame += frameCount;
+
+		// Discard the frames which are no longer needed by the next output frame.
+		long nextFrame = Math.floorDiv(outputFrame * kernel.getDecimation(), kernel.getInterpolation());
+		discardFrames((int) Math.max(0, Math.min(windowFrames, nextFrame - halfTaps + 1 - windowStart)));
+
+		outProperties.DataSize += frameCount * outProperties.getFrameSize();
+	}
+
+	// O(1)
+	@Override
+	public long getOutputFrameCount(long inputFrameCount)
+	{
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			return inputFrameCount;
+		}
+
+		return Math.floorDiv(inputFrameCount * kernel.getInterpolation() + kernel.getDecimation() - 1, kernel.getDecimation());
+	}
+
+	// O(1)
+	@Override
+	public long getFirstInputFrame(long outputFrame)
+	{
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			return outputFrame;
+		}
+
+		return Math.floorDiv(outputFrame * kernel.getDecimation(), kernel.getInterpolation()) - kernel.getTaps() / 2 + 1;
+	}
+
+	// O(1)
+	@Override
+	public long getLastInputFrame(long outputFrame)
+	{
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			return outputFrame;
+		}
+
+		return getFirstInputFrame(outputFrame) + kernel.getTaps() - 1;
+	}
+
+	// O(n) * O(taps)
+	@Override
+	public void processFrames(ByteBuffer input, long inputFrame, long inputFrameCount,
+			long outputFrame, int frameCount, byte[] output, int outputOffset)
+	{
+		int frameSize = properties.getFrameSize();
+
+		ByteBuffer inputBuffer = input.slice();
+		inputBuffer.order(properties.ByteOrder);
+
+		if(outProperties.SampleRate == properties.SampleRate)
+		{
+			if(isConvertingFrames())
+			{
+				// Only the sample format or channels change.
+				convertFrames(inputBuffer, (int) (outputFrame - inputFrame), outputFrame, frameCount, output, outputOffset);
+				return;
+			}
+
+			// No processing needed.
+			inputBuffer.position((int) (outputFrame - inputFrame) * frameSize);
+			inputBuffer.get(output, outputOffset, frameCount * frameSize);
+			return;
+		}
+
+		if(kernel == null)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		// Decode the frames needed for the range, which are silent outside of the input.
+		long firstFrame = getFirstInputFrame(outputFrame);
+		long lastFrame = getLastInputFrame(outputFrame + frameCount - 1);
+		float[][] frames = new float[outProperties.NumChannels][(int) (lastFrame - firstFrame + 1)];
+
+		long decodeStart = Math.max(firstFrame, 0);
+		long decodeEnd = Math.min(lastFrame + 1, inputFrameCount);
+
+		if(decodeEnd > decodeStart)
+		{
+			decodeFrames(inputBuffer, (int) (decodeStart - inputFrame), (int) (decodeEnd - decodeStart), frames, (int) (decodeStart - firstFrame));
+		}
+
+		SampleBlock outputBlock = blockPool.acquire(outProperties.NumChannels, frameCount);
+		outputBlock.setFrameCount(frameCount);
+
+		resample(frames, firstFrame, outputFrame, frameCount, outputBlock, 0);
+		outputBlock.encode(outProperties, outputCodec, output, outputOffset);
+
+		blockPool.release(outputBlock);
+	}
+
+	// O(n) * O(taps)
+	// Computes output frames from a window of decoded input frames, whose first frame has the given absolute index,
+	// into the output block from a frame offset, in the output format. Recordings with many channels are resampled in groups of channels.
+	private void resample(float[][] window, long windowStart, long outputFrame, int frameCount, SampleBlock output, int outputOffset)
+	{
+		int groupCount = getChannelGroupCount(frameCount);
+
+		if(groupCount > 1)
+		{
+			RunChannelGroups(groupCount, window.length, (firstChannel, endChannel) ->
+					resampleChannels(firstChannel, endChannel, window, windowStart, outputFrame, frameCount, output, outputOffset));
+		}
+		else
+		{
+			resampleChannels(0, window.length, window, windowStart, outputFrame, frameCount, output, outputOffset);
+		}
+	}
+
+	// O(n) * O(taps)
+	// Computes the output frames of the channels of a group, from the first channel to the end channel exclusively.
+	private void resampleChannels(int firstChannel, int endChannel, float[][] window, long windowStart, long outputFrame,
+			int frameCount, SampleBlock output, int outputOffset)
+	{
+		int interpolation = kernel.getInterpolation();
+		int decimation = kernel.getDecimation();
+		int taps = kernel.getTaps();
+		float[] coefficients = kernel.getCoefficients();
+
+		int minValue = kernel.getMinValue();
+		int maxValue = kernel.getMaxValue();
+		boolean floatingPoint = properties.isFloatingPoint();
+		boolean requantizing = isRequantizing();
+
+		// Output positions are tracked in units of 1/L input frames.
+		long position = outputFrame * decimation;
+
+		for(int frame = 0; frame < frameCount; frame++, position += decimation)
+		{
+			int phase = (int) (position % interpolation);
+			int start = (int) (position / interpolation - taps / 2 + 1 - windowStart);
+			int coefficientOffset = phase * taps;
+
+			for(int channel = firstChannel; channel < endChannel; channel++)
+			{
+				// O(taps) - A fixed length dot product per sample.
+				double sum = kernels.dotProduct(coefficients, coefficientOffset, window[channel], start, taps);
+
+				// Integer samples are rounded and clipped to the bit depth, floating point samples are kept as is.
+				// Samples of another output format are requantized from the sum, and rounded and clipped when encoded.
+				output.getChannel(channel)[outputOffset + frame] = requantizing ? requantize(sum, outputFrame + frame, channel) :
+						floatingPoint ? (float) sum : Math.max(minValue, Math.min(maxValue, Math.round(sum)));
+			}
+		}
+	}
+
+	// O(n)
+	// Decodes input frames from a frame offset in the input, into the window from a frame offset.
+	// Unsigned samples are centered on 0 so that the initial and final silence is correct.
+	private void decodeFrames(ByteBuffer input, int inputOffset, int frameCount, float[][] window, int windowOffset)
+	{
+		inputCodec.decode(input, inputOffset, frameCount, window, windowOffset);
+	}
+
+	private void ensureWindowCapacity(int frameCount)
+	{
+		for(int channel = 0; channel < window.length; channel++)
+		{
+			if(window[channel].length < frameCount)
+			{
+				window[channel] = Arrays.copyOf(window[channel], frameCount);
+			}
+		}
+	}
+
+	private void discardFrames(int frameCount)
+	{
+		for(float[] samples : window)
+		{
+			System.arraycopy(samples, frameCount, samples, 0, windowFrames - frameCount);
+		}
+
+		windowStart += frameCount;
+		windowFrames -= frameCount;
+	}
+}
@@ -0,0 +1,51 @@
+package audioresampler.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A filter which can compute any range of its output frames from their absolute index,
+ * without processing the input from the start. The state carried between segments
+ * by {@link AudioFilter#process(byte[])} is instead derived from the output frame index,
+ * and the result is the same as processing the whole input in order,
+ * so ranges can be computed independently, in any order or in parallel.
+ *
+ * The input properties must be set beforehand, and computing ranges
+ * does not change the filter's sequential state or its output data size.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public interface RandomAccessFilter
+{
+	/**
+	 * Get the total number of output frames for an input of the given number of frames,
+	 * including the frames output by the final empty segment.
+	 */
+	long getOutputFrameCount(long inputFrameCount);
+
+	/**
+	 * Get the first input frame needed to compute an output frame.
+	 * The result can be negative when the output frame depends on the silence before the input.
+	 */
+	long getFirstInputFrame(long outputFrame);
+
+	/**
+	 * Get the last input frame needed to compute an output frame.
+	 * The result can be past the end of the input when the output frame depends on the silence after it.
+	 */
+	long getLastInputFrame(long outputFrame);
+
+	/**
+	 * Compute a range of output frames.
+	 *
+	 * @param input The input frames from its position to its limit, which must contain
+	 * the frames needed for the range that are within the input.
+	 * @param inputFrame The absolute index of the first frame in the input buffer.
+	 * @param inputFrameCount The total number of frames in the input, past which frames are silent.
+	 * @param outputFrame The absolute index of the first output frame to compute.
+	 * @param frameCount The number of output frames to compute.
+	 * @param output The array to write the output frames to.
+	 * @param outputOffset The offset of the first output frame in the array, in bytes.
+	 */
+	void processFrames(ByteBuffer input, long inputFrame, long inputFrameCount,
+			long outputFrame, int frameCount, byte[] output, int outputOffset);
+}
@@ -0,0 +1,44 @@
+package audioresampler.audio;
+
+import java.nio.ByteBuffer;
+
+/**
+ * A filter which processes a stream pushed to it in small blocks, such as audio captured in real time,
+ * into buffers provided by the caller. Frames consumed and produced are reported by moving the positions
+ * of the buffers, and nothing is allocated once the filter has processed blocks of the largest size used,
+ * so the time taken by each call only depends on the number of frames.
+ *
+ * The input properties must be set beforehand. Pushing frames changes the filter's sequential state
+ * and its output data size, as {@link AudioFilter#process(byte[])} does, so the two must not be interleaved.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public interface RealTimeFilter
+{
+	/**
+	 * Get the largest number of output frames produced by a push of the given number of input frames,
+	 * or by a flush if the number is 0, which output buffers can be sized for.
+	 */
+	int getMaxOutputFrameCount(int inputFrameCount);
+
+	/**
+	 * Filter whole frames from the position of the input buffer to the position of the output buffer,
+	 * and move both positions past the frames consumed and produced. Input frames are only consumed
+	 * while their output fits in the output buffer, and those which are not consumed must be pushed again.
+	 *
+	 * @param input The input frames from its position to its limit.
+	 * @param output The buffer to write the output frames to, from its position to its limit.
+	 * @return The number of output frames produced.
+	 */
+	int push(ByteBuffer input, ByteBuffer output);
+
+	/**
+	 * Output the frames which depend on the end of the input, in place of processing an empty segment,
+	 * and move the position of the output buffer past them. If they do not all fit in the buffer,
+	 * the rest is output by the next flush. Once all of them are output, the filter starts a new stream.
+	 *
+	 * @param output The buffer to write the output frames to, from its position to its limit.
+	 * @return The number of output frames produced.
+	 */
+	int flush(ByteBuffer output);
+}
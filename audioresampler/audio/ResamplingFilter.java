@@ -1,18 +1,52 @@
 package audioresampler.audio;
 
+import java.nio.ByteBuffer;
 import java.util.Arrays;
+import java.util.concurrent.ForkJoinTask;
 
 import audioresampler.audio.AudioProperties.AudioFormat;
 
 /**
  * A three-step resampling filter which pads, interpolates and decimates audio data.
  *
+ * Resampling filters which process channels independently can resample groups of channels
+ * on several threads, which is worth it for recordings with many channels.
+ *
+ * Resampling filters can also write another sample format than the input's, for instance 16-bit samples
+ * from a 24-bit master, as they compute the output samples, so the data is only decoded and encoded once.
+ * Samples are scaled to the full scale of the output format, and can be dithered with triangular noise
+ * of one output step when bits are removed. The noise of each sample is derived from its absolute frame index
+ * and channel, so ranges computed independently are the same as the output of the whole input.
+ *
+ * A {@link ChannelMatrix} can downmix, select or reorder the channels as the input is decoded,
+ * so that only the output channels are resampled.
+ *
  * @author Raphaël Zumer <rzumer@gmail.com>
  */
 public class ResamplingFilter extends AudioFilter
 {
 	private byte[] lastFrameProcessed; // Represents the last frame of the last segment processed with the filter, used for interpolation.
 	private int decimationOffset; // Represents the number of frames to skip initially during decimation.
+	private PcmCodec codec; // Converts the samples of the input format.
+	private int channelParallelism = 1; // Number of groups of channels resampled at once.
+	private AudioFormat outFormat; // Output sample format, or null to keep the input format.
+	private short outBitsPerSample; // Output bit depth, or 0 to keep the input bit depth.
+	private boolean dither; // Whether TPDF dither is added when bits are removed.
+	private float requantizationScale = 1; // Factor from the full scale of the input to that of the output.
+	private boolean requantizing; // Whether the output format differs from the input format.
+	private boolean dithering; // Whether dither is added to the output samples.
+	private ChannelMatrix channelMatrix; // Maps the input channels to the output channels, or null to keep them.
+	SampleCodec inputCodec; // Selected for the input format, and mixes the input channels to the output channels.
+
+	private static final int MinGroupSamples = 1 << 14; // Number of samples below which a group of channels is not worth a task.
+
+	/**
+	 * Resamples the channels of a group, from the first channel to the end channel exclusively.
+	 */
+	interface ChannelGroupTask
+	{
+		void run(int firstChannel, int endChannel);
+	}
 
 	public ResamplingFilter(int outSampleRate)
 	{
@@ -38,106 +72,256 @@ public class ResamplingFilter extends AudioFilter
 
 		lastFrameProcessed = null;
 		decimationOffset = 0;
+		codec = new PcmCodec(properties);
+
+		if(outFormat != null)
+		{
+			outProperties.Format = outFormat;
+			outProperties.BitsPerSample = outBitsPerSample;
+		}
+
+		// Samples are processed as floats, which only keep 24 significant bits of 32-bit integer samples.
+		if(!outProperties.isFloatingPoint() && outProperties.BitsPerSample > 24)
+		{
+			throw new IllegalArgumentException("32-bit integer output");
+		}
+
+		requantizing = outProperties.Format != properties.Format || outProperties.BitsPerSample != properties.BitsPerSample;
+		requantizationScale = (float) (GetFullScale(outProperties) / GetFullScale(properties));
+
+		// Dither is added when integer samples lose resolution.
+		dithering = dither && requantizing && !outProperties.isFloatingPoint()
+				&& (properties.isFloatingPoint() || outProperties.BitsPerSample < properties.BitsPerSample);
+
+		if(channelMatrix != null)
+		{
+			if(channelMatrix.getInputChannels() != properties.NumChannels)
+			{
+				throw new IllegalArgumentException("Channel matrix for " + channelMatrix.getInputChannels() + " channels");
+			}
+
+			outProperties.NumChannels = (short) channelMatrix.getOutputChannels();
+		}
+
+		inputCodec = SampleCodec.ForProperties(properties, channelMatrix);
 	}
 
 	/**
-	 * @deprecated Use {@link FastResamplingFilter} instead.
+	 * Set the format of the output samples, independently of the input format, which applies from the next input properties set.
+	 * Integer samples of 8, 16 or 24 bits and 32-bit floating point samples are supported,
+	 * as samples are stored in whole bytes and processed as floats. 32-bit integer input is written
+	 * in one of these formats, as its samples only keep 24 significant bits.
+	 *
+	 * @param format The output sample format, or null to keep the input format and bit depth.
+	 * @param bitsPerSample The output bit depth.
 	 */
-	@Override
-	@Deprecated
-	public byte[] process(byte[] input)
+	public void setOutputFormat(AudioFormat format, int bitsPerSample)
 	{
-		// 24-bit input processing causes an array out of bounds exception.
-		if(!validateInputParameters(0, 16))
+		if(format != null && !(format == AudioFormat.WAVE_PCM && bitsPerSample >= 8 && bitsPerSample <= 24 && bitsPerSample % 8 == 0)
+				&& !(format == AudioFormat.WAVE_FLOAT && bitsPerSample == 32))
 		{
-			throw new UnsupportedOperationException();
+			throw new IllegalArgumentException();
 		}
 
-		if(outProperties.SampleRate == properties.SampleRate || input.length == 0)
+		outFormat = format;
+		outBitsPerSample = (short) bitsPerSample;
+	}
+
+	/**
+	 * Set whether triangular probability density function (TPDF) dither is added to integer output samples
+	 * which have a lower resolution than the input samples, which applies from the next input properties set.
+	 */
+	public void setDither(boolean dither)
+	{
+		this.dither = dither;
+	}
+
+	/**
+	 * Set the matrix which maps the input channels to the output channels, which applies from the next input properties set,
+	 * whose number of channels must be that of the inputs of the matrix.
+	 *
+	 * @param matrix The channel matrix, or null to keep the input channels.
+	 */
+	public void setChannelMatrix(ChannelMatrix matrix)
+	{
+		channelMatrix = matrix;
+	}
+
+	public ChannelMatrix getChannelMatrix()
+	{
+		return channelMatrix;
+	}
+
+	// O(1)
+	// Gets whether the output samples are in another format than the input samples.
+	final boolean isRequantizing()
+	{
+		return requantizing;
+	}
+
+	// O(1)
+	// Gets whether frames are converted to another format or other channels, so that they cannot be copied as is at the same sample rate.
+	final boolean isConvertingFrames()
+	{
+		return requantizing || channelMatrix != null;
+	}
+
+	// O(n)
+	// Gets the frames of an input block in the output channels, mixed to a block of the pool if there is a channel matrix,
+	// or the input block itself otherwise. The block is returned to the pool by releaseMixedBlock once used.
+	final SampleBlock mixChannels(SampleBlock input)
+	{
+		if(channelMatrix == null)
 		{
-			// No processing needed.
 			return input;
 		}
 
-		int outSampleRate = outProperties.SampleRate;
-		int frameSize = properties.getFrameSize();
-		int sampleRateLCM = MathHelper.LeastCommonMultiple(properties.SampleRate, outSampleRate);
+		SampleBlock block = blockPool.acquire(channelMatrix.getOutputChannels(), input.getFrameCount());
+		channelMatrix.mix(input, block);
 
-		// Bit Stuffing
-		int padding = ((sampleRateLCM / properties.SampleRate) - 1) * frameSize;
+		return block;
+	}
 
-		// Stuffed input contains the initial bytes, plus zeroes between each frame as padding.
-		// If this is not the first segment being processed, append extra padding at the start, which will be interpolated with the last frame.
-		byte[] stuffedInput =
-				lastFrameProcessed == null ?
-				new byte[input.length + (input.length / frameSize * padding) - padding] :
-				new byte[input.length + (input.length / frameSize * padding)];
+	// O(1)
+	final void releaseMixedBlock(SampleBlock input, SampleBlock block)
+	{
+		if(block != input)
+		{
+			blockPool.release(block);
+		}
+	}
 
-		int stuffedInputPointer = lastFrameProcessed == null ? 0 : padding;
+	// O(n)
+	// Scales output samples of a channel from the full scale of the input to that of the output, and dithers them,
+	// from their offset in the channel and the absolute index of the first frame. Integer samples are rounded when encoded.
+	// Samples are left as is if the format does not change.
+	final void requantize(float[] samples, int offset, int frameCount, int channel, long firstFrame)
+	{
+		float scale = requantizationScale;
 
-		for(int i = 0; i < input.length; i+= frameSize)
+		if(!requantizing)
 		{
-			byte[] frame = Arrays.copyOfRange(input, i, i + frameSize);
+			return;
+		}
 
-			for(byte b : frame)
+		if(dithering)
+		{
+			for(int frame = 0; frame < frameCount; frame++)
 			{
-				stuffedInput[stuffedInputPointer] = b;
-				stuffedInputPointer++;
+				samples[offset + frame] = samples[offset + frame] * scale + GetDither(firstFrame + frame, channel);
 			}
+		}
+		else
+		{
+			for(int frame = 0; frame < frameCount; frame++)
+			{
+				samples[offset + frame] *= scale;
+			}
+		}
+	}
+
+	// O(1)
+	// Requantizes an output sample computed in double precision, in the inner loop of filters which compute samples one at a time.
+	final float requantize(double sample, long frame, int channel)
+	{
+		return dithering ? (float) (sample * requantizationScale) + GetDither(frame, channel) : (float) (sample * requantizationScale);
+	}
 
-			stuffedInputPointer += padding;
+	// O(n)
+	// Copies the frames of a block in the output channels to the output block in the output format, for filters which keep the sample rate.
+	final void requantize(SampleBlock input, SampleBlock output, long firstFrame)
+	{
+		input.copyTo(output);
+
+		for(int channel = 0; channel < output.getNumChannels(); channel++)
+		{
+			requantize(output.getChannel(channel), 0, output.getFrameCount(), channel, firstFrame);
 		}
+	}
 
-		// Linear Interpolation
-		for(int i = 0 - (lastFrameProcessed == null ? 0 : frameSize); i < stuffedInput.length; i += frameSize + padding)
+	// O(n)
+	// Converts a range of input frames from a frame offset in a buffer to the output format and channels, for filters which keep the sample rate.
+	final void convertFrames(ByteBuffer input, int inputOffset, long firstFrame, int frameCount, byte[] output, int outputOffset)
+	{
+		SampleBlock block = blockPool.acquire(outProperties.NumChannels, frameCount);
+
+		block.setFrameCount(frameCount);
+		block.decode(input, inputOffset, frameCount, inputCodec, 0);
+
+		for(int channel = 0; channel < outProperties.NumChannels; channel++)
 		{
-			int j = i + frameSize + padding;
+			requantize(block.getChannel(channel), 0, frameCount, channel, firstFrame);
+		}
+
+		block.encode(outProperties, output, outputOffset);
+		blockPool.release(block);
+	}
 
-			// Retrieve frames to interpolate.
-			byte[] leftFrame = i >= 0 ? Arrays.copyOfRange(stuffedInput, i, i + frameSize) : lastFrameProcessed;
-			byte[] rightFrame = j >= stuffedInput.length ?
-					null : Arrays.copyOfRange(stuffedInput, j, j + frameSize);
+	// O(1)
+	// Gets the full scale of samples, 1 for floating point samples and half of the range of integer samples.
+	private static double GetFullScale(AudioProperties properties)
+	{
+		return properties.isFloatingPoint() ? 1 : Math.scalb(1.0, properties.BitsPerSample - 1);
+	}
 
-			for(int channel = 0; channel < properties.NumChannels; channel++)
-			{
-				int leftSample = properties.BitsPerSample > 8 ? ByteHelper.GetIntFromBytes(
-						Arrays.copyOfRange(leftFrame, channel * properties.getChannelSize(), (channel + 1) * properties.getChannelSize()),
-						properties.ByteOrder) : ByteHelper.GetUnsignedIntFromByte(leftFrame[channel]);
-				int rightSample = rightFrame == null ?
-						ByteHelper.GetZeroByte(properties.BitsPerSample > 8) :
-						properties.BitsPerSample > 8 ?
-						ByteHelper.GetIntFromBytes(Arrays.copyOfRange(
-								rightFrame,
-								channel * properties.getChannelSize(),
-								(channel + 1) * properties.getChannelSize()), properties.ByteOrder) :
-						ByteHelper.GetUnsignedIntFromByte(rightFrame[channel]);
-
-				for(int k = 0; k < (padding / frameSize); k++)
-				{
-					int index = i + (frameSize * (k + 1)) + (channel * properties.getChannelSize());
-
-					if(index + properties.getChannelSize() <= stuffedInput.length)
-					{
-						int interpolatedSample = MathHelper.InterpolateLinear(leftSample, rightSample,
-								(double)(k + 1) / ((padding / frameSize) + 1));
-
-						byte[] interpolatedBytes = properties.BitsPerSample == 8 ?
-								new byte[] { (byte)interpolatedSample } : properties.BitsPerSample == 16 ?
-								ByteHelper.GetShortBytes((short)interpolatedSample, properties.ByteOrder) :
-								ByteHelper.GetIntBytes(interpolatedSample, properties.ByteOrder);
-
-						for(int l = 0; l < interpolatedBytes.length; l++)
-						{
-							stuffedInput[index + l] = interpolatedBytes[l];
-						}
-					}
-				}
-			}
+	// O(1)
+	// Gets triangular noise of one step of amplitude, the difference of two uniform values derived from the frame index and channel
+	// by the SplitMix64 finalizer, so that the noise does not depend on the order in which samples are computed.
+	static float GetDither(long frame, int channel)
+	{
+		long bits = ((frame << 16 | channel & 0xffff) + 1) * 0x9e3779b97f4a7c15L;
+		bits = (bits ^ (bits >>> 30)) * 0xbf58476d1ce4e5b9L;
+		bits = (bits ^ (bits >>> 27)) * 0x94d049bb133111ebL;
+		bits ^= bits >>> 31;
+
+		return ((bits >>> 40) - (bits & 0xffffff)) * 0x1p-24f;
+	}
+
+	// O(n)
+	/**
+	 * @deprecated Use {@link FastResamplingFilter} instead.
+	 */
+	@Override
+	@Deprecated
+	public byte[] process(byte[] input)
+	{
+		// 24-bit input processing causes an array out of bounds exception.
+		// Frames are neither requantized nor mixed.
+		if(!validateInputParameters(0, 16) || isConvertingFrames())
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		if(outProperties.SampleRate == properties.SampleRate || input.length == 0)
+		{
+			// No processing needed.
+			return input;
 		}
 
+		int frameSize = properties.getFrameSize();
+		int channelSize = properties.getChannelSize();
+		int frameCount = input.length / frameSize;
+		int sampleRateLCM = MathHelper.LeastCommonMultiple(properties.SampleRate, outProperties.SampleRate);
+
+		if(frameCount == 0)
+		{
+			// Trailing bytes which do not form a whole frame are ignored.
+			return new byte[0];
+		}
+
+		// The input is upsampled to the LCM of the sample rates by stuffing interpolated frames between the input frames,
+		// and the stuffed input is decimated to the output sample rate. Only the stuffed frames kept by decimation are computed,
+		// from their position, so the stuffed input is never stored and memory use does not depend on the LCM.
+		int interpolationRate = sampleRateLCM / properties.SampleRate;
+		int decimationRate = sampleRateLCM / outProperties.SampleRate;
+
+		// Input frames are spaced by the interpolation rate in the stuffed input. If this is not the first segment processed,
+		// the stuffed input starts with the frames interpolated between the last frame of the previous segment and the first frame.
+		int firstFramePosition = lastFrameProcessed == null ? 0 : interpolationRate - 1;
+		long stuffedLength = ((long) (frameCount - 1) * interpolationRate + 1 + firstFramePosition) * frameSize;
+
 		// Decimation
-		int decimationRate = sampleRateLCM / outSampleRate;
-		int outputSize = (int) Math.round(((double)stuffedInput.length / decimationRate));
+		int outputSize = (int) Math.round((double) stuffedLength / decimationRate);
 
 		// Add extra bytes if the end of the file is uneven.
 		while(outputSize % frameSize != 0)
@@ -148,33 +332,92 @@ public class ResamplingFilter extends AudioFilter
 		byte[] downsampledInput = new byte[outputSize];
 		int decimatedInputPointer = 0;
 
-		for(int i = decimationOffset * frameSize; i < stuffedInput.length; i += decimationRate * frameSize)
+		for(long i = (long) decimationOffset * frameSize; i < stuffedLength; i += (long) decimationRate * frameSize)
 		{
-			byte[] frame = Arrays.copyOfRange(stuffedInput, i, i + frameSize);
+			// Position of the stuffed frame relative to the first input frame, and distance from the input frame before it.
+			long position = i / frameSize - firstFramePosition;
+			int leftFrame = (int) Math.floorDiv(position, interpolationRate);
+			int phase = (int) (position - (long) leftFrame * interpolationRate);
 
-			for(byte b : frame)
+			if(phase == 0)
+			{
+				System.arraycopy(input, leftFrame * frameSize, downsampledInput, decimatedInputPointer, frameSize);
+			}
+			else
 			{
-					downsampledInput[decimatedInputPointer] = b;
-					decimatedInputPointer++;
+				// Linear Interpolation between the input frames around the stuffed frame, which always has an input frame after it.
+				double distance = (double) phase / interpolationRate;
+
+				for(int channel = 0; channel < properties.NumChannels; channel++)
+				{
+					int leftSample = leftFrame >= 0 ?
+							codec.get(input, leftFrame * frameSize + channel * channelSize) :
+							codec.get(lastFrameProcessed, channel * channelSize);
+					int rightSample = codec.get(input, (leftFrame + 1) * frameSize + channel * channelSize);
+
+					codec.put(downsampledInput, decimatedInputPointer + channel * channelSize,
+							MathHelper.InterpolateLinear(leftSample, rightSample, distance));
+				}
 			}
 
-			decimationOffset = Math.abs(stuffedInput.length - (decimationRate * frameSize) - i) / frameSize;
+			decimatedInputPointer += frameSize;
+			decimationOffset = (int) (Math.abs(stuffedLength - (long) decimationRate * frameSize - i) / frameSize);
 		}
 
 		// Fill in any remaining bytes with silence.
-		while(decimatedInputPointer < outputSize)
-		{
-			downsampledInput[decimatedInputPointer] = ByteHelper.GetZeroByte(properties.BitsPerSample > 8);
-			decimatedInputPointer++;
-		}
+		Arrays.fill(downsampledInput, decimatedInputPointer, outputSize, ByteHelper.GetZeroByte(properties.BitsPerSample > 8));
 
-		lastFrameProcessed = Arrays.copyOfRange(input, input.length - frameSize, input.length);
+		lastFrameProcessed = Arrays.copyOfRange(input, (frameCount - 1) * frameSize, frameCount * frameSize);
 
 		outProperties.DataSize += downsampledInput.length;
 
 		return downsampledInput;
 	}
 
+	/**
+	 * Set the number of groups of channels which are resampled at once, on the common fork join pool.
+	 * Channels are grouped only when each group has enough samples to resample, so small segments
+	 * and files with few channels are still resampled on the calling thread.
+	 * The output is the same as when channels are resampled in order.
+	 */
+	public void setChannelParallelism(int parallelism)
+	{
+		if(parallelism < 1)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		channelParallelism = parallelism;
+	}
+
+	// O(1)
+	// Gets the number of groups of channels to resample a number of frames in, which is 1 if they are resampled in order.
+	// The channels resampled are the output channels.
+	final int getChannelGroupCount(int frameCount)
+	{
+		int numChannels = outProperties.NumChannels;
+
+		return (int) Math.max(1, Math.min(Math.min(channelParallelism, numChannels), (long) frameCount * numChannels / MinGroupSamples));
+	}
+
+	// O(n / p)
+	// Runs a task for each group of channels in parallel, the first one on the calling thread,
+	// and returns once all of them are done. Channels are split evenly between groups.
+	static void RunChannelGroups(int groupCount, int numChannels, ChannelGroupTask task)
+	{
+		ForkJoinTask<?>[] tasks = new ForkJoinTask<?>[groupCount];
+
+		for(int group = 0; group < groupCount; group++)
+		{
+			final int firstChannel = numChannels * group / groupCount;
+			final int endChannel = numChannels * (group + 1) / groupCount;
+
+			tasks[group] = ForkJoinTask.adapt(() -> task.run(firstChannel, endChannel));
+		}
+
+		ForkJoinTask.invokeAll(tasks);
+	}
+
 	protected boolean validateInputParameters(int maxSampleRate, int maxBitDepth)
 	{
 		if(outProperties.SampleRate <= 0)
@@ -182,7 +425,7 @@ public class ResamplingFilter extends AudioFilter
 			return false;
 		}
 
-		if(properties.Format != AudioFormat.WAVE_PCM)
+		if(properties.Format != AudioFormat.WAVE_PCM && properties.Format != AudioFormat.WAVE_FLOAT)
 		{
 			return false;
 		}
@@ -0,0 +1,71 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import audioresampler.audio.AudioProperties.AudioFormat;
+
+@SuppressWarnings("deprecation")
+public class ResamplingFilterTest
+{
+	@Test
+	public void testInterpolation()
+	{
+		// Input frames are kept, and the frames between them are interpolated, including from the last frame of the previous segment.
+		ResamplingFilter filter = new ResamplingFilter(16000);
+		filter.setInputProperties(CreateProperties(8000, 1));
+
+		assertArrayEquals(ToBytes(0, 50, 100), filter.process(ToBytes(0, 100)));
+		assertArrayEquals(ToBytes(150, 200), filter.process(ToBytes(200)));
+		assertEquals(10, filter.getOutputProperties().DataSize);
+	}
+
+	@Test
+	public void testLargeRatio()
+	{
+		// Segments of one second of 7.1 audio are resampled from 44.1 to 48 kHz, whose least common multiple
+		// would stuff 160 frames per input frame, without storing the stuffed input.
+		AudioProperties properties = CreateProperties(44100, 8);
+		ResamplingFilter filter = new ResamplingFilter(48000);
+		filter.setInputProperties(properties);
+
+		byte[] input = new byte[44100 * properties.getFrameSize()];
+		new Random(1).nextBytes(input);
+
+		for(int segment = 0; segment < 10; segment++)
+		{
+			byte[] output = filter.process(input);
+
+			assertEquals(48000, output.length / properties.getFrameSize(), 1);
+		}
+	}
+
+	private static byte[] ToBytes(int... samples)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(samples.length * 2).order(ByteOrder.LITTLE_ENDIAN);
+
+		for(int sample : samples)
+		{
+			buffer.putShort((short) sample);
+		}
+
+		return buffer.array();
+	}
+
+	private static AudioProperties CreateProperties(int sampleRate, int numChannels)
+	{
+		AudioProperties properties = new AudioProperties();
+		properties.Format = AudioFormat.WAVE_PCM;
+		properties.NumChannels = (short) numChannels;
+		properties.SampleRate = sampleRate;
+		properties.BitsPerSample = 16;
+		properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+
+		return properties;
+	}
+}
@@ -0,0 +1,186 @@
+package audioresampler.audio;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.LockSupport;
+
+/**
+ * A bounded first-in first-out queue between a single producer thread and a single consumer thread,
+ * which does not lock. Each index is only written by one side and read by the other,
+ * so elements are published once the producer moves the tail past them.
+ * A side waiting for the queue to change spins briefly, then parks until the other side wakes it up.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+final class RingBuffer<T>
+{
+	// Number of busy waits before parking while the queue is full or empty, only worth it when the other side runs in parallel.
+	private static final int SpinCount = Runtime.getRuntime().availableProcessors() > 1 ? 100 : 0;
+	private static final long ParkTime = 10000000; // Nanoseconds parked at most between checks of the queue.
+
+	private final Object[] elements;
+	private final int mask;
+	private final AtomicLong head = new AtomicLong(); // Index of the next element to take, written by the consumer.
+	private final AtomicLong tail = new AtomicLong(); // Index of the next element to put, written by the producer.
+	private volatile Thread waitingProducer; // The producer, while it is parked on a full queue.
+	private volatile Thread waitingConsumer; // The consumer, while it is parked on an empty queue.
+
+	/**
+	 * @param capacity The number of elements held at most, rounded up to a power of 2.
+	 */
+	RingBuffer(int capacity)
+	{
+		if(capacity < 1 || capacity > 1 << 30)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		int size = Integer.highestOneBit(capacity);
+
+		if(size < capacity)
+		{
+			size <<= 1;
+		}
+
+		elements = new Object[size];
+		mask = size - 1;
+	}
+
+	int getCapacity()
+	{
+		return elements.length;
+	}
+
+	/**
+	 * Get the number of elements in the queue, which can be called from any thread,
+	 * but is only an estimate while the producer or consumer is running.
+	 */
+	int size()
+	{
+		long first = head.get();
+
+		return (int) Math.max(0, Math.min(elements.length, tail.get() - first));
+	}
+
+	/**
+	 * Add an element if the queue is not full. Only called by the producer.
+	 */
+	boolean offer(T element)
+	{
+		long index = tail.get();
+
+		if(index - head.get() == elements.length)
+		{
+			return false;
+		}
+
+		elements[(int) index & mask] = element;
+		tail.set(index + 1);
+		Wake(waitingConsumer);
+
+		return true;
+	}
+
+	/**
+	 * Remove the oldest element, or return null if the queue is empty. Only called by the consumer.
+	 */
+	@SuppressWarnings("unchecked")
+	T poll()
+	{
+		long index = head.get();
+
+		if(index == tail.get())
+		{
+			return null;
+		}
+
+		T element = (T) elements[(int) index & mask];
+		elements[(int) index & mask] = null;
+		head.set(index + 1);
+		Wake(waitingProducer);
+
+		return element;
+	}
+
+	/**
+	 * Add an element, waiting while the queue is full.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	void put(T element) throws InterruptedException
+	{
+		for(int attempt = 0; !offer(element); attempt++)
+		{
+			if(attempt < SpinCount)
+			{
+				Spin();
+				continue;
+			}
+
+			// The queue is checked again once the thread is visible to the consumer, so that a wake up is not missed.
+			waitingProducer = Thread.currentThread();
+
+			if(tail.get() - head.get() == elements.length)
+			{
+				park();
+			}
+
+			waitingProducer = null;
+		}
+	}
+
+	/**
+	 * Remove the oldest element, waiting while the queue is empty.
+	 * @throws InterruptedException If the thread is interrupted while waiting.
+	 */
+	T take() throws InterruptedException
+	{
+		T element;
+
+		for(int attempt = 0; (element = poll()) == null; attempt++)
+		{
+			if(attempt < SpinCount)
+			{
+				Spin();
+				continue;
+			}
+
+			waitingConsumer = Thread.currentThread();
+
+			if(head.get() == tail.get())
+			{
+				park();
+			}
+
+			waitingConsumer = null;
+		}
+
+		return element;
+	}
+
+	private static void Spin() throws InterruptedException
+	{
+		if(Thread.interrupted())
+		{
+			throw new InterruptedException();
+		}
+
+		Thread.onSpinWait();
+	}
+
+	private void park() throws InterruptedException
+	{
+		LockSupport.parkNanos(this, ParkTime);
+
+		if(Thread.interrupted())
+		{
+			throw new InterruptedException();
+		}
+	}
+
+	private static void Wake(Thread thread)
+	{
+		if(thread != null)
+		{
+			LockSupport.unpark(thread);
+		}
+	}
+}
@@ -0,0 +1,57 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import org.junit.Test;
+
+public class RingBufferTest
+{
+	@Test
+	public void testCapacity()
+	{
+		RingBuffer<Integer> buffer = new RingBuffer<Integer>(3);
+
+		assertEquals(4, buffer.getCapacity());
+
+		for(int i = 0; i < 4; i++)
+		{
+			assertTrue(buffer.offer(i));
+		}
+
+		assertFalse(buffer.offer(4));
+		assertEquals(Integer.valueOf(0), buffer.poll());
+		assertTrue(buffer.offer(4));
+	}
+
+	@Test
+	public void testOrder() throws InterruptedException
+	{
+		final int Count = 100000;
+		final RingBuffer<Integer> buffer = new RingBuffer<Integer>(4);
+
+		Thread producer = new Thread(() ->
+		{
+			try
+			{
+				for(int i = 0; i < Count; i++)
+				{
+					buffer.put(i);
+				}
+			}
+			catch(InterruptedException e)
+			{
+				// The test fails on the missing elements.
+			}
+		});
+
+		producer.start();
+
+		for(int i = 0; i < Count; i++)
+		{
+			assertEquals(i, buffer.take().intValue());
+		}
+
+		producer.join();
+		assertNull(buffer.poll());
+	}
+}
@@ -0,0 +1,208 @@
+package audioresampler.audio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+
+/**
+ * A block of audio frames stored per channel, which filters can process
+ * without decoding and encoding bytes at each step.
+ *
+ * Samples are stored as floats on the integer scale of their bit depth, centered on 0,
+ * so unsigned 8-bit samples are offset by -128. Floats represent integers of up to
+ * 24 bits exactly, so decoding and encoding integer samples is lossless up to 24 bits,
+ * and 32-bit integer samples keep 24 significant bits.
+ * Floating point samples are stored as is, and are neither rounded nor clipped when encoded.
+ * Blocks are meant to be reused between segments, and can be shared through a {@link SampleBlockPool}.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public final class SampleBlock
+{
+	private float[][] channels;
+	private int frameCount;
+
+	public SampleBlock(int numChannels, int capacity)
+	{
+		if(numChannels < 0 || capacity < 0)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		channels = new float[numChannels][capacity];
+	}
+
+	public int getNumChannels()
+	{
+		return channels.length;
+	}
+
+	public int getCapacity()
+	{
+		return channels.length == 0 ? 0 : channels[0].length;
+	}
+
+	public int getFrameCount()
+	{
+		return frameCount;
+	}
+
+	public void setFrameCount(int frameCount)
+	{
+		if(frameCount < 0 || frameCount > getCapacity())
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.frameCount = frameCount;
+	}
+
+	/**
+	 * Get the samples of a channel. The array can be larger than the frame count.
+	 */
+	public float[] getChannel(int channel)
+	{
+		return channels[channel];
+	}
+
+	// Gets the samples of all channels, as codecs and channel matrices read and write them.
+	float[][] getChannels()
+	{
+		return channels;
+	}
+
+	/**
+	 * Reshape the block for a number of channels and at least a number of frames.
+	 * The frames held are kept as long as the number of channels does not change.
+	 */
+	public void reserve(int numChannels, int capacity)
+	{
+		if(numChannels != channels.length)
+		{
+			channels = new float[numChannels][capacity];
+			frameCount = 0;
+		}
+		else if(capacity > getCapacity())
+		{
+			for(int channel = 0; channel < numChannels; channel++)
+			{
+				channels[channel] = Arrays.copyOf(channels[channel], capacity);
+			}
+		}
+	}
+
+	// O(n)
+	public void copyTo(SampleBlock block)
+	{
+		block.reserve(channels.length, frameCount);
+
+		for(int channel = 0; channel < channels.length; channel++)
+		{
+			System.arraycopy(channels[channel], 0, block.channels[channel], 0, frameCount);
+		}
+
+		block.frameCount = frameCount;
+	}
+
+	// O(n)
+	/**
+	 * Append the frames of another block with the same number of channels.
+	 */
+	public void append(SampleBlock block)
+	{
+		if(block.channels.length != channels.length)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		reserve(channels.length, frameCount + block.frameCount);
+
+		for(int channel = 0; channel < channels.length; channel++)
+		{
+			System.arraycopy(block.channels[channel], 0, channels[channel], frameCount, block.frameCount);
+		}
+
+		frameCount += block.frameCount;
+	}
+
+	// O(n)
+	/**
+	 * Decode the whole frames from the position to the limit of a buffer, replacing the frames of the block.
+	 * Trailing bytes which do not form a whole frame are ignored.
+	 */
+	public void decode(ByteBuffer input, AudioProperties properties)
+	{
+		decode(input, properties, SampleCodec.ForProperties(properties));
+	}
+
+	// O(n)
+	void decode(ByteBuffer input, AudioProperties properties, SampleCodec codec)
+	{
+		int frameCount = input.remaining() / properties.getFrameSize();
+
+		reserve(properties.NumChannels, frameCount);
+		codec.decode(input, 0, frameCount, channels, 0);
+		this.frameCount = frameCount;
+	}
+
+	// O(n)
+	/**
+	 * Decode frames from a frame offset in a buffer, relative to its position, to a frame offset in the block.
+	 * The block must already hold enough frames, and its frame count is not changed.
+	 */
+	public void decode(ByteBuffer input, int inputOffset, int frameCount, AudioProperties properties, int blockOffset)
+	{
+		decode(input, inputOffset, frameCount, SampleCodec.ForProperties(properties), blockOffset);
+	}
+
+	// O(n)
+	void decode(ByteBuffer input, int inputOffset, int frameCount, SampleCodec codec, int blockOffset)
+	{
+		codec.decode(input, inputOffset, frameCount, channels, blockOffset);
+	}
+
+	// O(n)
+	/**
+	 * Encode the frames of the block to a new array.
+	 */
+	public byte[] encode(AudioProperties properties)
+	{
+		return encode(properties, SampleCodec.ForProperties(properties));
+	}
+
+	// O(n)
+	byte[] encode(AudioProperties properties, SampleCodec codec)
+	{
+		byte[] output = new byte[frameCount * properties.getFrameSize()];
+		codec.encode(channels, frameCount, output, 0);
+
+		return output;
+	}
+
+	// O(n)
+	/**
+	 * Encode the frames of the block to an array from an offset in bytes.
+	 * Integer samples are rounded to the nearest integer and clipped to the range of the bit depth.
+	 *
+	 * @return The number of bytes written.
+	 */
+	public int encode(AudioProperties properties, byte[] output, int offset)
+	{
+		return encode(properties, SampleCodec.ForProperties(properties), output, offset);
+	}
+
+	// O(n)
+	int encode(AudioProperties properties, SampleCodec codec, byte[] output, int offset)
+	{
+		codec.encode(channels, frameCount, output, offset);
+
+		return frameCount * properties.getFrameSize();
+	}
+
+	/**
+	 * Get the offset of unsigned samples of a bit depth, which is subtracted when decoding and added back when encoding.
+	 */
+	static int GetBias(int bitsPerSample)
+	{
+		return bitsPerSample <= 8 ? 128 : 0;
+	}
+}
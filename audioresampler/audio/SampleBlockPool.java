@@ -0,0 +1,65 @@
+package audioresampler.audio;
+
+import java.util.ArrayDeque;
+
+/**
+ * A pool of sample blocks, so that the buffers of blocks used for a short time,
+ * such as per segment or per task, are reused rather than allocated again.
+ * The pool can be shared between threads.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+public final class SampleBlockPool
+{
+	private final ArrayDeque<SampleBlock> blocks = new ArrayDeque<SampleBlock>();
+	private final int maxSize; // Number of released blocks kept for reuse.
+
+	public SampleBlockPool(int maxSize)
+	{
+		if(maxSize < 0)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		this.maxSize = maxSize;
+	}
+
+	/**
+	 * Get an empty block for a number of channels and at least a number of frames.
+	 */
+	public SampleBlock acquire(int numChannels, int capacity)
+	{
+		SampleBlock block;
+
+		synchronized(this)
+		{
+			block = blocks.poll();
+		}
+
+		if(block == null)
+		{
+			return new SampleBlock(numChannels, capacity);
+		}
+
+		block.reserve(numChannels, capacity);
+		block.setFrameCount(0);
+
+		return block;
+	}
+
+	/**
+	 * Return a block to the pool. The block must not be used afterwards.
+	 */
+	public synchronized void release(SampleBlock block)
+	{
+		if(block != null && blocks.size() < maxSize)
+		{
+			blocks.push(block);
+		}
+	}
+
+	public synchronized int getSize()
+	{
+		return blocks.size();
+	}
+}
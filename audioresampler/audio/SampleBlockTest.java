@@ -0,0 +1,58 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+import org.junit.Test;
+
+import audioresampler.audio.AudioProperties.AudioFormat;
+
+public class SampleBlockTest
+{
+	@Test
+	public void testRoundTrip()
+	{
+		for(int bitsPerSample = 8; bitsPerSample <= 24; bitsPerSample += 8)
+		{
+			AudioProperties properties = new AudioProperties();
+			properties.Format = AudioFormat.WAVE_PCM;
+			properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+			properties.BitsPerSample = (short) bitsPerSample;
+			properties.NumChannels = 2;
+
+			byte[] data = new byte[properties.getFrameSize() * 100];
+
+			for(int i = 0; i < data.length; i++)
+			{
+				data[i] = (byte) (i * 37);
+			}
+
+			SampleBlock block = new SampleBlock(1, 0);
+			block.decode(ByteBuffer.wrap(data), properties);
+
+			assertEquals(2, block.getNumChannels());
+			assertEquals(100, block.getFrameCount());
+			assertArrayEquals(data, block.encode(properties));
+		}
+	}
+
+	@Test
+	public void testEncoding()
+	{
+		AudioProperties properties = new AudioProperties();
+		properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+		properties.BitsPerSample = 8;
+		properties.NumChannels = 1;
+
+		SampleBlock block = new SampleBlock(1, 4);
+		block.setFrameCount(4);
+		block.getChannel(0)[0] = 0; // Centered silence
+		block.getChannel(0)[1] = -200; // Clipped
+		block.getChannel(0)[2] = 126.6f; // Rounded
+		block.getChannel(0)[3] = 1000; // Clipped
+
+		assertArrayEquals(new byte[] { (byte) 128, 0, (byte) 255, (byte) 255 }, block.encode(properties));
+	}
+}
@@ -0,0 +1,254 @@
+package audioresampler.audio;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Converts frames between bytes and planar samples for one sample format.
+ *
+ * A codec is selected once per stream by {@link #ForProperties(AudioProperties)}, which returns
+ * a specialized codec for the common formats (16-bit and 24-bit integer stereo little-endian), whose loops
+ * have no checks on the bit depth, the number of channels or the byte order, and a generic codec otherwise.
+ * All codecs produce the same samples and bytes as the generic one.
+ *
+ * Samples are decoded and encoded as in {@link SampleBlock}: on the integer scale of their bit depth,
+ * centered on 0, and rounded to the nearest integer and clipped when encoded.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+abstract class SampleCodec
+{
+	private static final SampleCodec Stereo16LE = new Stereo16LittleEndianCodec();
+	private static final SampleCodec Stereo24LE = new Stereo24LittleEndianCodec();
+
+	/**
+	 * Get the codec for the sample format of audio properties.
+	 */
+	static SampleCodec ForProperties(AudioProperties properties)
+	{
+		if(properties.NumChannels == 2 && properties.ByteOrder == ByteOrder.LITTLE_ENDIAN && !properties.isFloatingPoint())
+		{
+			if(properties.BitsPerSample == 16)
+			{
+				return Stereo16LE;
+			}
+			else if(properties.BitsPerSample == 24)
+			{
+				return Stereo24LE;
+			}
+		}
+
+		return new GenericCodec(properties);
+	}
+
+	/**
+	 * Get the codec for the sample format of audio properties, which decodes frames to the output channels
+	 * of a channel matrix, or to the channels of the input if the matrix is null.
+	 */
+	static SampleCodec ForProperties(AudioProperties properties, ChannelMatrix matrix)
+	{
+		SampleCodec codec = ForProperties(properties);
+
+		return matrix != null ? new MixingCodec(codec, matrix) : codec;
+	}
+
+	// O(n)
+	/**
+	 * Decode frames from a frame offset in a buffer, relative to its position, to a frame offset in the channels.
+	 * The byte order of the buffer is ignored.
+	 */
+	abstract void decode(ByteBuffer input, int inputOffset, int frameCount, float[][] channels, int channelOffset);
+
+	// O(n)
+	/**
+	 * Encode frames of the channels to an array from an offset in bytes.
+	 */
+	abstract void encode(float[][] channels, int frameCount, byte[] output, int offset);
+
+	// O(1)
+	/**
+	 * Read the samples of a frame centered on 0, at a position in bytes in a buffer.
+	 */
+	abstract void readFrame(ByteBuffer input, int position, float[] samples);
+
+	String getName()
+	{
+		return getClass().getSimpleName();
+	}
+
+	// Any bit depth, number of channels and byte order, one channel at a time.
+	static final class GenericCodec extends SampleCodec
+	{
+		private final PcmCodec codec;
+		private final int numChannels;
+		private final int channelSize;
+		private final int frameSize;
+
+		GenericCodec(AudioProperties properties)
+		{
+			codec = new PcmCodec(properties);
+			numChannels = properties.NumChannels;
+			channelSize = properties.getChannelSize();
+			frameSize = properties.getFrameSize();
+		}
+
+		@Override
+		void decode(ByteBuffer input, int inputOffset, int frameCount, float[][] channels, int channelOffset)
+		{
+			int position = input.position() + inputOffset * frameSize;
+
+			for(int channel = 0; channel < numChannels; channel++)
+			{
+				codec.decode(input, position + channel * channelSize, frameSize, frameCount, channels[channel], channelOffset);
+			}
+		}
+
+		@Override
+		void encode(float[][] channels, int frameCount, byte[] output, int offset)
+		{
+			for(int channel = 0; channel < numChannels; channel++)
+			{
+				codec.encode(channels[channel], 0, frameCount, output, offset + channel * channelSize, frameSize);
+			}
+		}
+
+		@Override
+		void readFrame(ByteBuffer input, int position, float[] samples)
+		{
+			codec.decode(input, position, channelSize, numChannels, samples, 0);
+		}
+	}
+
+	// Decodes frames of the input channels with another codec, and mixes them to the output channels of a channel matrix.
+	// Frames are decoded to blocks of a pool, so that codecs can be shared by tasks decoding ranges at once. Frames cannot be encoded.
+	static final class MixingCodec extends SampleCodec
+	{
+		private final SampleCodec codec;
+		private final ChannelMatrix matrix;
+		private final SampleBlockPool blockPool = new SampleBlockPool(4);
+
+		MixingCodec(SampleCodec codec, ChannelMatrix matrix)
+		{
+			this.codec = codec;
+			this.matrix = matrix;
+		}
+
+		@Override
+		void decode(ByteBuffer input, int inputOffset, int frameCount, float[][] channels, int channelOffset)
+		{
+			SampleBlock block = blockPool.acquire(matrix.getInputChannels(), frameCount);
+
+			codec.decode(input, inputOffset, frameCount, block.getChannels(), 0);
+			matrix.mix(block.getChannels(), 0, frameCount, channels, channelOffset);
+
+			blockPool.release(block);
+		}
+
+		@Override
+		void encode(float[][] channels, int frameCount, byte[] output, int offset)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		@Override
+		void readFrame(ByteBuffer input, int position, float[] samples)
+		{
+			float[] inputSamples = new float[matrix.getInputChannels()];
+			codec.readFrame(input, position, inputSamples);
+
+			// Summed in the same order as when mixing channels, so the samples are the same.
+			for(int channel = 0; channel < samples.length; channel++)
+			{
+				float sample = 0;
+
+				for(int inputChannel = 0; inputChannel < inputSamples.length; inputChannel++)
+				{
+					sample += inputSamples[inputChannel] * matrix.getGain(channel, inputChannel);
+				}
+
+				samples[channel] = sample;
+			}
+		}
+	}
+
+	// 16-bit stereo little-endian, both channels of a frame at once.
+	private static final class Stereo16LittleEndianCodec extends SampleCodec
+	{
+		@Override
+		void decode(ByteBuffer input, int inputOffset, int frameCount, float[][] channels, int channelOffset)
+		{
+			float[] left = channels[0];
+			float[] right = channels[1];
+			int position = input.position() + inputOffset * 4;
+
+			for(int frame = 0; frame < frameCount; frame++, position += 4)
+			{
+				left[channelOffset + frame] = PcmCodec.GetShort(input, position, true);
+				right[channelOffset + frame] = PcmCodec.GetShort(input, position + 2, true);
+			}
+		}
+
+		@Override
+		void encode(float[][] channels, int frameCount, byte[] output, int offset)
+		{
+			float[] left = channels[0];
+			float[] right = channels[1];
+			int position = offset;
+
+			for(int frame = 0; frame < frameCount; frame++, position += 4)
+			{
+				PcmCodec.PutShort(output, position, Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(left[frame]))), true);
+				PcmCodec.PutShort(output, position + 2, Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(right[frame]))), true);
+			}
+		}
+
+		@Override
+		void readFrame(ByteBuffer input, int position, float[] samples)
+		{
+			samples[0] = PcmCodec.GetShort(input, position, true);
+			samples[1] = PcmCodec.GetShort(input, position + 2, true);
+		}
+	}
+
+	// 24-bit stereo little-endian, both channels of a frame at once.
+	private static final class Stereo24LittleEndianCodec extends SampleCodec
+	{
+		private static final int MaxValue = (1 << 23) - 1;
+		private static final int MinValue = -MaxValue - 1;
+
+		@Override
+		void decode(ByteBuffer input, int inputOffset, int frameCount, float[][] channels, int channelOffset)
+		{
+			float[] left = channels[0];
+			float[] right = channels[1];
+			int position = input.position() + inputOffset * 6;
+
+			for(int frame = 0; frame < frameCount; frame++, position += 6)
+			{
+				left[channelOffset + frame] = PcmCodec.Get24(input, position, true);
+				right[channelOffset + frame] = PcmCodec.Get24(input, position + 3, true);
+			}
+		}
+
+		@Override
+		void encode(float[][] channels, int frameCount, byte[] output, int offset)
+		{
+			float[] left = channels[0];
+			float[] right = channels[1];
+			int position = offset;
+
+			for(int frame = 0; frame < frameCount; frame++, position += 6)
+			{
+				PcmCodec.Put24(output, position, Math.max(MinValue, Math.min(MaxValue, Math.round(left[frame]))), true);
+				PcmCodec.Put24(output, position + 3, Math.max(MinValue, Math.min(MaxValue, Math.round(right[frame]))), true);
+			}
+		}
+
+		@Override
+		void readFrame(ByteBuffer input, int position, float[] samples)
+		{
+			samples[0] = PcmCodec.Get24(input, position, true);
+			samples[1] = PcmCodec.Get24(input, position + 3, true);
+		}
+	}
+}
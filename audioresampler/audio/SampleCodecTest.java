@@ -0,0 +1,66 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import org.junit.Test;
+
+import audioresampler.audio.AudioProperties.AudioFormat;
+
+public class SampleCodecTest
+{
+	@Test
+	public void testSpecializations()
+	{
+		// Specialized codecs decode, encode and read frames like the generic codec, including rounding and clipping.
+		Random random = new Random(1);
+
+		for(int bitsPerSample = 16; bitsPerSample <= 24; bitsPerSample += 8)
+		{
+			AudioProperties properties = new AudioProperties();
+			properties.Format = AudioFormat.WAVE_PCM;
+			properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+			properties.BitsPerSample = (short) bitsPerSample;
+			properties.NumChannels = 2;
+
+			SampleCodec codec = SampleCodec.ForProperties(properties);
+			SampleCodec generic = new SampleCodec.GenericCodec(properties);
+
+			assertFalse(codec instanceof SampleCodec.GenericCodec);
+
+			byte[] data = new byte[properties.getFrameSize() * 64];
+			random.nextBytes(data);
+
+			float[][] expected = new float[2][70];
+			float[][] samples = new float[2][70];
+			generic.decode(ByteBuffer.wrap(data), 2, 60, expected, 5);
+			codec.decode(ByteBuffer.wrap(data), 2, 60, samples, 5);
+
+			assertArrayEquals(expected[0], samples[0], 0);
+			assertArrayEquals(expected[1], samples[1], 0);
+
+			for(int frame = 0; frame < 70; frame++)
+			{
+				samples[0][frame] = (float) (random.nextGaussian() * (1 << (bitsPerSample - 1)));
+				samples[1][frame] = frame - 35.5f;
+			}
+
+			byte[] expectedBytes = new byte[data.length + 6];
+			byte[] bytes = new byte[data.length + 6];
+			generic.encode(samples, 64, expectedBytes, 3);
+			codec.encode(samples, 64, bytes, 3);
+
+			assertArrayEquals(expectedBytes, bytes);
+
+			float[] expectedFrame = new float[2];
+			float[] frame = new float[2];
+			generic.readFrame(ByteBuffer.wrap(data), properties.getFrameSize() * 7, expectedFrame);
+			codec.readFrame(ByteBuffer.wrap(data), properties.getFrameSize() * 7, frame);
+
+			assertArrayEquals(expectedFrame, frame, 0);
+		}
+	}
+}
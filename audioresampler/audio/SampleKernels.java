@@ -0,0 +1,82 @@
+package audioresampler.audio;
+
+/**
+ * The inner loops of the resampling filters over planar samples, in scalar code.
+ *
+ * When the {@code jdk.incubator.vector} module is available and the preferred vector species
+ * holds at least 4 floats, {@link #getInstance()} returns vectorized kernels instead, which are
+ * compiled separately from the {@code vector} source folder. Vectorized dot products accumulate in single precision,
+ * so filtered samples can differ from the scalar kernels by 1 for 8-bit and 16-bit samples,
+ * and by a few units for 24-bit samples (about 1e-6 of full scale). Linear interpolation is always exact.
+ * Setting the {@code audioresampler.vector} system property to false always selects the scalar kernels.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+class SampleKernels
+{
+	private static final SampleKernels Instance = Create();
+
+	/**
+	 * Get the kernels selected for the runtime.
+	 */
+	static SampleKernels getInstance()
+	{
+		return Instance;
+	}
+
+	// O(n)
+	/**
+	 * Interpolate samples between each indexed sample and the next one, by a weight in millionths,
+	 * for the positions from the first one, written to the output from its offset plus the position.
+	 * Samples are offset by a bias while interpolating, and the results are rounded to the nearest integer.
+	 */
+	void interpolate(float[] samples, int[] indices, int[] weights, int first, int count, float[] output, int outputOffset, int bias)
+	{
+		for(int i = first; i < first + count; i++)
+		{
+			int index = indices[i];
+			double weight = (double)weights[i] / 1000000;
+
+			output[outputOffset + i] = MathHelper.InterpolateLinear((int) samples[index] + bias, (int) samples[index + 1] + bias, weight) - bias;
+		}
+	}
+
+	// O(n)
+	/**
+	 * Get the sum of the products of coefficients and samples, from their offsets.
+	 */
+	double dotProduct(float[] coefficients, int coefficientOffset, float[] samples, int sampleOffset, int length)
+	{
+		double sum = 0;
+
+		for(int i = 0; i < length; i++)
+		{
+			sum += (double)coefficients[coefficientOffset + i] * samples[sampleOffset + i];
+		}
+
+		return sum;
+	}
+
+	String getName()
+	{
+		return "scalar";
+	}
+
+	private static SampleKernels Create()
+	{
+		if(!Boolean.parseBoolean(System.getProperty("audioresampler.vector", "true")))
+		{
+			return new SampleKernels();
+		}
+
+		try
+		{
+			// The vectorized kernels fail to load or to initialize without the module or a wide enough species.
+			return (SampleKernels) Class.forName("audioresampler.audio.VectorKernels").getDeclaredConstructor().newInstance();
+		}
+		catch(ReflectiveOperationException | LinkageError | RuntimeException e)
+		{
+			return new SampleKernels();
+		}
+	}
+}
@@ -0,0 +1,53 @@
+package audioresampler.audio;
+
+import static org.junit.Assert.*;
+
+import java.util.Random;
+
+import org.junit.Test;
+
+public class SampleKernelsTest
+{
+	@Test
+	public void testDotProduct()
+	{
+		// The selected kernels, vectorized or not, stay within a unit of the scalar kernels at 16-bit scale.
+		Random random = new Random(1);
+		float[] coefficients = new float[67];
+		float[] samples = new float[80];
+
+		for(int i = 0; i < coefficients.length; i++)
+		{
+			coefficients[i] = (float) (random.nextGaussian() / 8);
+		}
+
+		for(int i = 0; i < samples.length; i++)
+		{
+			samples[i] = random.nextInt(65536) - 32768;
+		}
+
+		SampleKernels scalar = new SampleKernels();
+		SampleKernels kernels = SampleKernels.getInstance();
+
+		for(int length = 0; length <= coefficients.length; length++)
+		{
+			double expected = scalar.dotProduct(coefficients, 0, samples, 3, length);
+
+			assertEquals(kernels.getName(), expected, kernels.dotProduct(coefficients, 0, samples, 3, length), 0.5);
+		}
+	}
+
+	@Test
+	public void testInterpolate()
+	{
+		// Samples are interpolated with the bias, and rounded like the linear filter.
+		float[] samples = { -128, 127, 0, -1 };
+		int[] indices = { 0, 0, 1, 2 };
+		int[] weights = { 0, 500000, 250000, 999999 };
+		float[] output = new float[5];
+
+		SampleKernels.getInstance().interpolate(samples, indices, weights, 0, 4, output, 1, 128);
+
+		assertArrayEquals(new float[] { 0, -128, 0, 95, -1 }, output, 0);
+	}
+}
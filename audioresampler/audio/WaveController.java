@@ -1,12 +1,23 @@
 package audioresampler.audio;
 
-import java.io.ByteArrayOutputStream;
-import java.io.FileInputStream;
 import java.io.IOException;
+import java.io.InterruptedIOException;
 import java.io.UnsupportedEncodingException;
 import java.nio.ByteBuffer;
 import java.nio.ByteOrder;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
 
 import audioresampler.audio.AudioProperties.AudioFormat;
 import audioresampler.io.FileSink;
@@ -14,177 +25,282 @@ import audioresampler.io.FileSource;
 
 public class WaveController extends AudioController
 {
-	public WaveController(FileSource source, FileSink sink) throws HeaderFormatException, UnsupportedFormatException
+	private static final int BlockSeconds = 4; // Duration of the output blocks computed by each task when applying a filter in parallel.
+
+	private static final int FormatPCM = 1; // Format code of integer samples.
+	private static final int FormatFloat = 3; // Format code of IEEE floating point samples.
+	private static final int FormatExtensible = 0xfffe; // Format code of extensible format chunks, whose actual format starts the SubFormat GUID.
+	private static final byte[] SubFormatSuffix = { 0x00, 0x00, 0x00, 0x00, 0x10, 0x00, (byte) 0x80, 0x00, 0x00, (byte) 0xaa, 0x00, 0x38, (byte) 0x9b, 0x71 }; // The rest of the SubFormat GUID of standard formats.
+
+	private static final int UnknownDataSize = -1; // Size 0xFFFFFFFF of chunks whose size is not known in advance, written by streaming producers.
+	private static final long MaxChunkSize = 0xfffffffeL; // Largest size which fits the 32-bit size field of a chunk, below UnknownDataSize.
+
+	// Chunks which describe the data are generated for the output, and chunks which refer to frame positions would be wrong once resampled,
+	// so they are not copied.
+	private static final List<String> GeneratedChunkIDs = Arrays.asList("fmt ", "fact", "data", "cue ", "smpl", "plst", "JUNK");
+
+	private long dataOffset; // Offset of the data chunk in the source file.
+	private long dataLength; // Number of bytes of data to read, which is unbounded for streams of unknown size.
+	private List<Chunk> chunks; // Chunks of the source file in order, up to the data chunk for streams.
+	private boolean copyChunks; // Whether the other chunks of the source file are copied after the output data.
+	private long rangeStart = 0; // First input frame of the range to filter.
+	private long rangeEnd = Long.MAX_VALUE; // End of the range of input frames to filter, exclusively.
+
+	// A chunk of the source file, found by its header.
+	private static final class Chunk
+	{
+		final String ID;
+		final long Offset; // Offset of the body in the source file.
+		final long Size; // Size of the body, without the padding byte of odd sizes.
+
+		Chunk(String id, long offset, long size)
+		{
+			ID = id;
+			Offset = offset;
+			Size = size;
+		}
+	}
+
+	public WaveController(FileSource source, FileSink sink) throws IOException, HeaderFormatException, UnsupportedFormatException
 	{
 		super(source, sink);
 	}
 
+	/**
+	 * Set whether chunks of the source file other than those describing the data, such as LIST, bext or iXML metadata,
+	 * are copied to the output after its data. Chunks are copied directly from file to file, and only from files,
+	 * as the chunks of streams are skipped when they are read.
+	 */
+	public void setCopyChunks(boolean copyChunks)
+	{
+		this.copyChunks = copyChunks;
+	}
+
+	/**
+	 * Set the range of input frames to filter, instead of the whole data. Filters which support random access
+	 * compute the output frames of the range from their position, reading only the input frames they need,
+	 * so the time taken depends on the length of the range and not on that of the file. Ranges can only be
+	 * filtered from files. The range is cut at the end of the data.
+	 *
+	 * @param firstFrame The first input frame of the range.
+	 * @param endFrame The input frame at the end of the range, exclusively, or {@link Long#MAX_VALUE} for the end of the data.
+	 */
+	public void setRange(long firstFrame, long endFrame)
+	{
+		if(firstFrame < 0 || endFrame < firstFrame)
+		{
+			throw new IllegalArgumentException();
+		}
+
+		rangeStart = firstFrame;
+		rangeEnd = endFrame;
+	}
+
+	/**
+	 * Get the offset of the data in the source file.
+	 */
+	public long getDataOffset()
+	{
+		return dataOffset;
+	}
+
 	@Override
-	protected void initializeProperties()
+	protected void initializeProperties() throws IOException, HeaderFormatException, UnsupportedFormatException
 	{
 		// Reset properties to default values.
 		properties = new AudioProperties();
 
-		try
+		// Index the chunks of the file, and assign the values of its format chunk to properties.
+		if(!parseFormat(indexChunks()))
 		{
-			// Attempt to retrieve the header from the start of the file to the data chunk ID.
-			byte[] header = popHeader();
+			throw new HeaderFormatException();
+		}
 
-			// Assign header values to properties and validate it.
-			if(!parseHeader(header))
+		// Streaming producers which do not know the data size in advance write 0 or 0xFFFFFFFF,
+		// in which case the data continues to the end of the input.
+		if(properties.DataSize == 0 || properties.DataSize == (UnknownDataSize & 0xffffffffL))
+		{
+			if(fileSource.isSeekable())
 			{
-				throw new HeaderFormatException();
+				properties.DataSize = fileSource.getBytesRemaining();
+				dataLength = properties.DataSize;
+			}
+			else
+			{
+				properties.DataSize = 0;
+				dataLength = Long.MAX_VALUE;
 			}
 		}
-		catch (IOException e)
-		{
-			System.err.println("Header Read Error");
-		}
-		catch (HeaderFormatException e)
-		{
-			System.err.println("Invalid WAVE Header");
-		}
-		catch (UnsupportedFormatException e)
+		else
 		{
-			System.err.println("Unsupported Format");
+			dataLength = properties.DataSize;
 		}
 	}
 
-	// O(n)
-	private byte[] popHeader() throws IOException, HeaderFormatException
+	// O(c), for c chunks
+	// Indexes the chunks of the source, and moves it to the start of the data chunk.
+	// Chunk headers are read at their positions in files, so chunks are found anywhere in the file without reading their bodies,
+	// and only the format chunk's body is read. Streams are read once, up to the data chunk, and the bodies of other chunks are skipped.
+	// Returns the body of the format chunk.
+	private ByteBuffer indexChunks() throws IOException, HeaderFormatException
 	{
-		// Main header buffer for iterating through fields
-		ByteArrayOutputStream headerStream = new ByteArrayOutputStream();
-		// Secondary buffers for parsing values
-		byte[] subChunkIDField;
-		byte[] subChunkSizeField;
-		int subChunkSize = 0;
-
-		// Parse the RIFF chunk
-		subChunkIDField = fileSource.pop(4);
-		headerStream.write(subChunkIDField);
-		if(!new String(subChunkIDField, "US-ASCII").equals("RIFF"))
+		chunks = new ArrayList<Chunk>();
+
+		ByteBuffer riffHeader = fileSource.isSeekable() ? fileSource.read(0, 12) : fileSource.read(12);
+
+		if(riffHeader.remaining() < 12 || !GetChunkID(riffHeader, 0).equals("RIFF") || !GetChunkID(riffHeader, 8).equals("WAVE"))
 		{
 			throw new HeaderFormatException();
 		}
 
-		// Write the rest of the RIFF chunk
-		headerStream.write(fileSource.pop(8));
+		if(!fileSource.isSeekable())
+		{
+			return indexStreamChunks();
+		}
 
-		// Parse subchunks until the data subchunk is reached
-		do
+		// Bytes past the end of the RIFF chunk are not part of the file, unless its size is unknown.
+		long riffEnd = 8 + (riffHeader.order(ByteOrder.LITTLE_ENDIAN).getInt(4) & 0xffffffffL);
+		long fileEnd = fileSource.getSize();
+		ByteBuffer format = null;
+		Chunk data = null;
+
+		for(long position = 12; position + 8 <= fileEnd && (data == null || position < riffEnd); )
 		{
-			headerStream.write(fileSource.pop(subChunkSize));
+			ByteBuffer chunkHeader = fileSource.read(position, 8).order(ByteOrder.LITTLE_ENDIAN);
+			Chunk chunk = new Chunk(GetChunkID(chunkHeader, 0), position + 8, chunkHeader.getInt(4) & 0xffffffffL);
 
-			if(fileSource.getBytesRemaining() < 4)
+			if(chunk.ID.equals("data"))
 			{
-				throw new HeaderFormatException();
+				data = chunk;
+			}
+			else if(chunk.Offset + chunk.Size > fileEnd)
+			{
+				// A truncated chunk ends the file.
+				break;
+			}
+			else if(chunk.ID.equals("fmt ") && format == null)
+			{
+				// Format chunks are at most 40 bytes long, and longer ones are invalid.
+				format = fileSource.read(chunk.Offset, chunk.Size <= 40 ? (int) chunk.Size : 0);
 			}
 
-			// Subchunk ID
-			subChunkIDField = fileSource.pop(4);
-			headerStream.write(subChunkIDField);
+			chunks.add(chunk);
 
-			// Subchunk Size
-			subChunkSizeField = fileSource.pop(4);
-			subChunkSize = (subChunkSizeField[0] & 0xFF) |
-					(subChunkSizeField[1] & 0xFF) << 8 |
-					(subChunkSizeField[2] & 0xFF) << 16 |
-					(subChunkSizeField[3] & 0xFF) << 24;
-			headerStream.write(subChunkSizeField);
+			// Data of unknown size continues to the end of the file.
+			if(chunk == data && (chunk.Size == 0 || chunk.Size == (UnknownDataSize & 0xffffffffL)))
+			{
+				break;
+			}
+
+			// Chunks of odd size are followed by a padding byte.
+			position = chunk.Offset + chunk.Size + (chunk.Size & 1);
 		}
-		while(!new String(subChunkIDField, "US-ASCII").equals("data"));
 
-		return headerStream.toByteArray();
+		if(format == null || data == null)
+		{
+			throw new HeaderFormatException();
+		}
+
+		dataOffset = data.Offset;
+		properties.DataSize = data.Size;
+		fileSource.skip(dataOffset);
+
+		return format;
 	}
 
-	// O(n)
-	private boolean parseHeader(byte[] header) throws UnsupportedEncodingException, UnsupportedFormatException
+	// O(c), for c chunks
+	// Indexes the chunks of a stream up to the data chunk, and returns a copy of the body of the format chunk.
+	private ByteBuffer indexStreamChunks() throws IOException, HeaderFormatException
 	{
-		// Main header buffer for iterating through fields
-		ByteBuffer headerBuffer = ByteBuffer.wrap(header);
+		ByteBuffer format = null;
+		Chunk chunk;
 
-		// Secondary buffers for parsing multibyte values
-		byte[] field = new byte[4];
-		byte[] longField = new byte[16];
-		byte[] shortField = new byte[2];
+		do
+		{
+			ByteBuffer chunkHeader = fileSource.read(8).order(ByteOrder.LITTLE_ENDIAN);
 
-		// The first field of each chunk is read in a loop, in order to account for extra data or offsets in the file header.
+			if(chunkHeader.remaining() < 8)
+			{
+				throw new HeaderFormatException();
+			}
 
-		// RIFF Chunk ID
-		headerBuffer.get(field);
+			chunk = new Chunk(GetChunkID(chunkHeader, 0), fileSource.getPosition(), chunkHeader.getInt(4) & 0xffffffffL);
+			chunks.add(chunk);
 
-		if(!new String(field, "US-ASCII").equals("RIFF"))
-		{
-			// RIFX is not yet supported.
-			return false;
+			if(chunk.ID.equals("fmt ") && format == null)
+			{
+				// Format chunks are at most 40 bytes long.
+				if(chunk.Size > 40)
+				{
+					throw new HeaderFormatException();
+				}
+
+				// The read buffer of the stream is reused, so the body is copied.
+				ByteBuffer body = fileSource.read((int) chunk.Size);
+				format = ByteBuffer.allocate(body.remaining()).put(body).flip();
+				fileSource.skip(chunk.Size & 1);
+			}
+			else if(!chunk.ID.equals("data"))
+			{
+				fileSource.skip(chunk.Size + (chunk.Size & 1));
+			}
 		}
-		else
+		while(!chunk.ID.equals("data"));
+
+		if(format == null)
 		{
-			properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+			throw new HeaderFormatException();
 		}
 
-		// RIFF Chunk Size
-		headerBuffer.get(field);
+		dataOffset = chunk.Offset;
+		properties.DataSize = chunk.Size;
 
-		// WAVE ID
-		headerBuffer.get(field);
+		return format;
+	}
 
-		if(!new String(field, "US-ASCII").equals("WAVE"))
-		{
-			return false;
-		}
+	private static String GetChunkID(ByteBuffer field, int position) throws UnsupportedEncodingException
+	{
+		byte[] id = new byte[4];
+		field.get(position, id);
 
-		// FMT Chunk ID
-		do
-		{
-			if(!headerBuffer.hasRemaining())
-			{
-				return false;
-			}
+		return new String(id, "US-ASCII");
+	}
 
-			headerBuffer.get(field);
-		}
-		while(!new String(field, "US-ASCII").equals("fmt "));
+	// O(1)
+	// Assigns the values of the body of a format chunk to properties, and returns whether it is valid.
+	private boolean parseFormat(ByteBuffer headerBuffer) throws UnsupportedFormatException
+	{
+		// Secondary buffers for parsing multibyte values
+		byte[] field = new byte[4];
+		byte[] longField = new byte[16];
+		byte[] shortField = new byte[2];
 
-		// FMT Chunk Size
-		headerBuffer.get(field);
-		int fmtChunkSize = ByteHelper.GetIntFromBytes(field, properties.ByteOrder);
+		// RIFX is not yet supported.
+		properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
 
-		// Only PCM (16) is supported.
-		switch(fmtChunkSize)
-		{
-			case 16:
-				break;
-			case 18:
-				throw new UnsupportedFormatException();
-			case 40:
-				throw new UnsupportedFormatException();
-			default:
-				return false;
-		}
+		// Codecs for multibyte values in the byte order of the file
+		PcmCodec intCodec = new PcmCodec(32, properties.ByteOrder);
+		PcmCodec shortCodec = new PcmCodec(16, properties.ByteOrder);
 
-		// Audio Format Code
-		headerBuffer.get(shortField);
-		int audioFormat = ByteHelper.GetIntFromBytes(shortField, properties.ByteOrder);
+		// Basic (16), extended (18) and extensible (40) format chunks are supported.
+		int fmtChunkSize = headerBuffer.remaining();
 
-		if(audioFormat != 1)
+		if(fmtChunkSize != 16 && fmtChunkSize != 18 && fmtChunkSize != 40)
 		{
-			// Non-PCM audio is not yet supported.
 			return false;
 		}
-		else
-		{
-			properties.Format = AudioFormat.WAVE_PCM;
-		}
+
+		// Audio Format Code
+		headerBuffer.get(shortField);
+		int audioFormat = shortCodec.get(shortField, 0) & 0xffff;
 
 		// Number of Channels
 		headerBuffer.get(shortField);
-		properties.NumChannels = (short) ByteHelper.GetIntFromBytes(shortField, properties.ByteOrder);
+		properties.NumChannels = (short) shortCodec.get(shortField, 0);
 
 		// Sampling Rate
 		headerBuffer.get(field);
-		properties.SampleRate = ByteHelper.GetIntFromBytes(field, properties.ByteOrder);
+		properties.SampleRate = intCodec.get(field, 0);
 
 		// Data Rate
 		headerBuffer.get(field);
@@ -194,7 +310,7 @@ public class WaveController extends AudioController
 
 		// Bits Per Sample
 		headerBuffer.get(shortField);
-		properties.BitsPerSample = (short) ByteHelper.GetIntFromBytes(shortField, properties.ByteOrder);
+		properties.BitsPerSample = (short) shortCodec.get(shortField, 0);
 
 		if(fmtChunkSize >= 18)
 		{
@@ -209,248 +325,471 @@ public class WaveController extends AudioController
 				// Speaker Position Mask
 				headerBuffer.get(field);
 
-				// SubFormat
+				// SubFormat, a GUID starting with the format code
 				headerBuffer.get(longField);
+
+				if(audioFormat == FormatExtensible)
+				{
+					if(!Arrays.equals(longField, 2, 16, SubFormatSuffix, 0, SubFormatSuffix.length))
+					{
+						throw new UnsupportedFormatException();
+					}
+
+					audioFormat = shortCodec.get(longField, 0) & 0xffff;
+				}
 			}
 		}
 
-		// Data Chunk ID
-		do
+		// Integer samples of 8, 16, 24 or 32 bits, and 32-bit floating point samples are supported.
+		// Samples of other depths would need the valid bits of an extensible format chunk, in a container of whole bytes.
+		if(audioFormat == FormatPCM && properties.BitsPerSample >= 8 && properties.BitsPerSample <= 32 && properties.BitsPerSample % 8 == 0)
 		{
-			if(!headerBuffer.hasRemaining())
-			{
-				return false;
-			}
-
-			headerBuffer.get(field);
+			properties.Format = AudioFormat.WAVE_PCM;
+		}
+		else if(audioFormat == FormatFloat && properties.BitsPerSample == 32)
+		{
+			properties.Format = AudioFormat.WAVE_FLOAT;
+		}
+		else
+		{
+			throw new UnsupportedFormatException();
 		}
-		while(!new String(field, "US-ASCII").equals("data"));
-
-		// Data Chunk Size
-		headerBuffer.get(field);
-		properties.DataSize = ByteHelper.GetIntFromBytes(field, properties.ByteOrder);
 
 		return true;
 	}
 
 	@Override
-	public void applyFilter(AudioFilter filter)
+	public void applyFilter(AudioFilter filter) throws IOException
 	{
-		if(properties.Format != AudioFormat.WAVE_PCM)
+		if(properties.Format != AudioFormat.WAVE_PCM && properties.Format != AudioFormat.WAVE_FLOAT)
 		{
-			System.err.println("Cannot Apply Filter");
-			return;
+			throw new FilterException("Cannot Apply Filter");
 		}
 
-		filter.setInputProperties(properties);
+		boolean ranged = rangeStart > 0 || rangeEnd < Long.MAX_VALUE;
 
-		System.out.print("Applying " + filter.getClass().getSimpleName());
+		if(ranged && (!(filter instanceof RandomAccessFilter) || !fileSource.isSeekable()))
+		{
+			throw new FilterException("Cannot Apply Filter to Range");
+		}
 
-		// Apply the filter by 1 second segments.
-		byte[] bytesPopped = null;
+		filter.setInputProperties(properties);
 
-		try
+		// Reserve the header in front of the data, it is completed once the data size is known.
+		// Data written to a stream cannot be completed, so its header has the final size if it can be known in advance.
+		if(fileSink.getBytesWritten() == 0)
 		{
-			for(int bytesWritten = 0; bytesWritten < properties.DataSize; bytesWritten += bytesPopped.length)
+			AudioProperties headerProperties = filter.getOutputProperties().copy();
+
+			if(!fileSink.isSeekable())
 			{
-				bytesPopped = fileSource.pop(Math.min(fileSource.getBytesRemaining(), properties.getFrameSize() * properties.SampleRate));
+				headerProperties.DataSize = getOutputDataSize(filter);
+			}
 
-				fileSink.push(filter.process(bytesPopped));
+			fileSink.push(GenerateFileSinkHeader(headerProperties, getCopiedChunksSize()));
+		}
 
-				System.out.print(".");
-			}
+		// Filters which keep the sample rate pass their input through, which is not worth splitting.
+		// Streams are read in order, so they cannot be split.
+		// Ranges are computed from their position, on any number of threads.
+		boolean parallel = ranged || parallelism > 1 && filter instanceof RandomAccessFilter && fileSource.isSeekable()
+				&& filter.getOutputProperties().SampleRate != properties.SampleRate
+				&& dataLength % properties.getFrameSize() == 0;
 
-			// Process one last time with no data to receive the final remaining samples when upsampling.
-			fileSink.push(filter.process(new byte[0]));
+		// Otherwise, resamplers use the threads for groups of channels, which is worth it for recordings with many channels.
+		if(!parallel && parallelism > 1 && filter instanceof ResamplingFilter)
+		{
+			((ResamplingFilter) filter).setChannelParallelism(parallelism);
 		}
-		catch(Exception e)
+
+		long startTime = System.nanoTime();
+		long inputFrameCount;
+
+		if(parallel)
 		{
-			System.err.println("\nFilter Processing Error: " + e);
-			e.printStackTrace();
+			long[] outputRange = getOutputRange(filter, Math.min(dataLength, fileSource.getBytesRemaining()) / properties.getFrameSize());
+
+			printProgress("Applying " + filter.getClass().getSimpleName() + (ranged ? " to output frames " + outputRange[0] + " to " + outputRange[1] : "")
+					+ (parallelism > 1 ? " on " + parallelism + " threads" : ""));
+
+			inputFrameCount = applyFilterInParallel(filter, outputRange[0], outputRange[1]);
+		}
+		else
+		{
+			printProgress("Applying " + filter.getClass().getSimpleName());
+
+			inputFrameCount = applyFilterInOrder(filter);
 		}
 
-		System.out.println();
+		printProgress(System.lineSeparator());
+
+		listener.conversionFinished((double) inputFrameCount / properties.SampleRate, System.nanoTime() - startTime);
 
 		// Update properties with the filter's output.
 		properties = filter.getOutputProperties();
 	}
 
 	// O(n)
-	@Override
-	public void saveToFile(String outputFilePath)
+	// Reads, filters and writes the data in order, with reading and writing done by their own threads.
+	// Returns the number of input frames filtered.
+	private long applyFilterInOrder(AudioFilter filter) throws IOException
 	{
-		// Ensure that the file source and the file sink are closed before saving.
-		close();
-
-		byte[] header = GenerateFileSinkHeader();
+		FilterPipeline pipeline = new FilterPipeline(fileSource, properties, dataLength, filter, fileSink, () -> printProgress("."), listener);
 
 		try
 		{
-			FileInputStream fis = new FileInputStream(fileSink.getLocation());
-			FileSink fs = new FileSink(outputFilePath);
+			pipeline.run();
+		}
+		catch(RuntimeException e)
+		{
+			throw new FilterException(e);
+		}
 
-			fs.push(header);
+		return pipeline.getInputFrameCount();
+	}
+
+	// O(n / p)
+	// Splits a range of the output in blocks which are computed independently from their position, on a pool of threads,
+	// and writes them in order. Only a few blocks are queued ahead of the one being written, to bound memory use.
+	// Input is read from the mapped file as blocks are filtered, so the time spent reading is part of the time spent filtering,
+	// and only the input frames the range needs are read.
+	// Returns the number of input frames filtered.
+	private long applyFilterInParallel(AudioFilter filter, long firstOutputFrame, long endOutputFrame) throws IOException
+	{
+		final RandomAccessFilter randomAccessFilter = (RandomAccessFilter) filter;
+		final int frameSize = properties.getFrameSize();
+		final int outputFrameSize = filter.getOutputProperties().getFrameSize();
+		final long inputFrameCount = Math.min(dataLength, fileSource.getBytesRemaining()) / frameSize;
+		final long outputFrameCount = randomAccessFilter.getOutputFrameCount(inputFrameCount);
+
+		int blockFrames = filter.getOutputProperties().SampleRate * BlockSeconds;
+
+		ExecutorService pool = new ForkJoinPool(parallelism);
+		ArrayDeque<Future<byte[]>> blocks = new ArrayDeque<Future<byte[]>>();
 
-			while(fis.available() > 0)
+		try
+		{
+			for(long outputFrame = firstOutputFrame; outputFrame < endOutputFrame || !blocks.isEmpty(); )
 			{
-				// Write in 1 second segments.
-				byte[] buffer = new byte[properties.SampleRate];
-				int bytesRead = fis.read(buffer);
+				while(blocks.size() < parallelism * 2 && outputFrame < endOutputFrame)
+				{
+					final long blockStart = outputFrame;
+					final int blockLength = (int) Math.min(blockFrames, endOutputFrame - outputFrame);
 
-				fs.push(Arrays.copyOfRange(buffer, 0, bytesRead));
-			}
+					blocks.add(pool.submit(new Callable<byte[]>()
+					{
+						@Override
+						public byte[] call() throws IOException
+						{
+							// Map the input frames the block needs, which overlap with the neighboring blocks.
+							long firstFrame = Math.max(0, randomAccessFilter.getFirstInputFrame(blockStart));
+							long lastFrame = Math.min(inputFrameCount - 1, randomAccessFilter.getLastInputFrame(blockStart + blockLength - 1));
+							int inputLength = (int) Math.max(0, lastFrame - firstFrame + 1) * frameSize;
 
-			// Add padding byte if the data length is odd.
-			if((fs.getBytesWritten() & 1) != 0)
+							long startTime = System.nanoTime();
+							ByteBuffer input = fileSource.getView(dataOffset + firstFrame * frameSize, inputLength);
+							byte[] output = new byte[blockLength * outputFrameSize];
+
+							// Blocks share the input frames at their edges, which are counted by the block they start in.
+							long endFrame = GetRangeInputFrame(randomAccessFilter, blockStart + blockLength, inputFrameCount, outputFrameCount);
+							long startFrame = GetRangeInputFrame(randomAccessFilter, blockStart, inputFrameCount, outputFrameCount);
+
+							listener.segmentRead((endFrame - startFrame) * frameSize, System.nanoTime() - startTime);
+							startTime = System.nanoTime();
+
+							randomAccessFilter.processFrames(input, firstFrame, inputFrameCount, blockStart, blockLength, output, 0);
+
+							listener.segmentFiltered(endFrame - startFrame, blockLength, System.nanoTime() - startTime);
+
+							return output;
+						}
+					}));
+
+					outputFrame += blockLength;
+				}
+
+				byte[] block = blocks.remove().get();
+				long startTime = System.nanoTime();
+
+				fileSink.push(block);
+
+				listener.segmentWritten(block.length, System.nanoTime() - startTime);
+				printProgress(".");
+			}
+		}
+		catch(InterruptedException e)
+		{
+			throw new InterruptedIOException();
+		}
+		catch(IOException e)
+		{
+			listener.ioError(e);
+			throw e;
+		}
+		catch(ExecutionException e)
+		{
+			if(e.getCause() instanceof IOException)
 			{
-				fs.push(new byte[] { 0 });
+				listener.ioError((IOException) e.getCause());
+				throw (IOException) e.getCause();
 			}
 
-			fis.close();
-			fs.close();
+			throw new FilterException(e.getCause());
 		}
-		catch (IOException e)
+		finally
 		{
-			System.err.println("File Save I/O Error: " + e);
+			pool.shutdownNow();
 		}
+
+		fileSource.skip(inputFrameCount * frameSize);
+		filter.getOutputProperties().DataSize += (endOutputFrame - firstOutputFrame) * outputFrameSize;
+
+		return GetRangeInputFrame(randomAccessFilter, endOutputFrame, inputFrameCount, outputFrameCount)
+				- GetRangeInputFrame(randomAccessFilter, firstOutputFrame, inputFrameCount, outputFrameCount);
 	}
 
 	// O(1)
-	private byte[] GenerateFileSinkHeader()
+	// Get the first input frame counted for the output frames starting at an output frame.
+	// The silence before and after the input has no frames, so the output starts at frame 0 and ends at the end of the input.
+	private static long GetRangeInputFrame(RandomAccessFilter filter, long outputFrame, long inputFrameCount, long outputFrameCount)
 	{
-		byte[] header = new byte[44];
-		int currentByte = 0;
+		if(outputFrame == 0)
+		{
+			return 0;
+		}
 
-		// ChunkID
-		String id = "RIFF";
-		byte[] idBytes = ByteHelper.GetASCIIBytes(id, ByteOrder.BIG_ENDIAN);
+		if(outputFrame >= outputFrameCount)
+		{
+			return inputFrameCount;
+		}
+
+		return Math.max(0, Math.min(inputFrameCount, filter.getFirstInputFrame(outputFrame)));
+	}
 
-		for(byte b : idBytes)
+	// O(1)
+	// Get the output frames of the range of input frames, from the first whose time is at or after the start of the range,
+	// to the first at or after its end, or to the end of the output if the range reaches the end of the input.
+	// The filter must support random access.
+	private long[] getOutputRange(AudioFilter filter, long inputFrameCount)
+	{
+		long outputFrameCount = ((RandomAccessFilter) filter).getOutputFrameCount(inputFrameCount);
+		long inputRate = properties.SampleRate;
+		long outputRate = filter.getOutputProperties().SampleRate;
+
+		long firstFrame = Math.min(outputFrameCount, -Math.floorDiv(-rangeStart * outputRate, inputRate));
+		long endFrame = rangeEnd >= inputFrameCount ? outputFrameCount : Math.min(outputFrameCount, -Math.floorDiv(-rangeEnd * outputRate, inputRate));
+
+		return new long[] { firstFrame, Math.max(firstFrame, endFrame) };
+	}
+
+	// O(1)
+	// Data written to a stream is only ended, and the path is ignored.
+	@Override
+	public void saveToFile(String outputFilePath) throws IOException
+	{
+		try
 		{
-			header[currentByte] = b;
-			currentByte++;
+			completeFile(outputFilePath);
 		}
+		catch(IOException e)
+		{
+			listener.ioError(e);
+			throw e;
+		}
+	}
 
-		// ChunkSize
-		currentByte = 4;
-		int chunkSize = 36 + properties.DataSize;
-		byte[] chunkSizeBytes = ByteHelper.GetIntBytes(chunkSize, ByteOrder.LITTLE_ENDIAN);
-		for(byte b : chunkSizeBytes)
+	// O(1)
+	private void completeFile(String outputFilePath) throws IOException
+	{
+		byte[] header = GenerateFileSinkHeader(properties, getCopiedChunksSize());
+
+		if(fileSink.getBytesWritten() == 0)
 		{
-			header[currentByte] = b;
-			currentByte++;
+			// No filter was applied, so there is no data.
+			fileSink.push(header);
 		}
 
-		// Format
-		currentByte = 8;
-		String format = "WAVE";
-		byte[] formatBytes = ByteHelper.GetASCIIBytes(format, ByteOrder.BIG_ENDIAN);
-		for(byte b : formatBytes)
+		// Data too large for its size field continues to the end of the file, so nothing can follow it.
+		if(properties.DataSize <= MaxChunkSize)
+		{
+			// Add padding byte if the data length is odd.
+			if((properties.DataSize & 1) != 0)
+			{
+				fileSink.push(new byte[] { 0 });
+			}
+
+			for(Chunk chunk : getCopiedChunks())
+			{
+				byte[] chunkHeader = new byte[8];
+				PutChunkID(chunkHeader, 0, chunk.ID);
+				new PcmCodec(32, ByteOrder.LITTLE_ENDIAN).put(chunkHeader, 4, (int) chunk.Size);
+
+				fileSink.push(chunkHeader);
+				fileSink.transferFrom(fileSource, chunk.Offset, chunk.Size + (chunk.Size & 1));
+			}
+		}
+
+		// Ensure that the file source is closed before saving.
+		fileSource.close();
+
+		if(!fileSink.isSeekable())
 		{
-			header[currentByte] = b;
-			currentByte++;
+			// Flush the stream before closing it, as errors are not reported when closing.
+			fileSink.flush();
+			fileSink.close();
+			return;
 		}
 
-		// Subchunk1ID
-		currentByte = 12;
-		String subchunk1ID = "fmt ";
-		byte[] subchunk1IDBytes = ByteHelper.GetASCIIBytes(subchunk1ID, ByteOrder.BIG_ENDIAN);
-		for(byte b : subchunk1IDBytes)
+		// Complete the header with the final data size in place, and close the file.
+		fileSink.write(0, header);
+		fileSink.close();
+
+		Path sinkPath = Paths.get(fileSink.getLocation()).toAbsolutePath().normalize();
+		Path outputPath = Paths.get(outputFilePath).toAbsolutePath().normalize();
+
+		if(!sinkPath.equals(outputPath))
 		{
-			header[currentByte] = b;
-			currentByte++;
+			// The data was written elsewhere, move the file rather than copying it.
+			Files.move(sinkPath, outputPath, StandardCopyOption.REPLACE_EXISTING);
 		}
+	}
 
-		// Subchunk1Size
-		currentByte = 16;
-		int subChunk1Size = 16;
-		byte[] subchunk1SizeBytes = ByteHelper.GetIntBytes(subChunk1Size, ByteOrder.LITTLE_ENDIAN);
-		for(byte b : subchunk1SizeBytes)
+	// O(c), for c chunks
+	// Get the chunks of the source file which are copied to the output.
+	private List<Chunk> getCopiedChunks()
+	{
+		List<Chunk> copiedChunks = new ArrayList<Chunk>();
+
+		if(copyChunks && fileSource.isSeekable())
 		{
-			header[currentByte] = b;
-			currentByte++;
+			for(Chunk chunk : chunks)
+			{
+				if(!GeneratedChunkIDs.contains(chunk.ID))
+				{
+					copiedChunks.add(chunk);
+				}
+			}
 		}
 
-		// AudioFormat
-		currentByte = 20;
-		short audioFormat = 1;
-		byte[] audioFormatBytes = ByteHelper.GetShortBytes(audioFormat, ByteOrder.LITTLE_ENDIAN);
-		for(byte b : audioFormatBytes)
+		return copiedChunks;
+	}
+
+	// O(c), for c chunks
+	// Get the size of the chunks copied to the output, with their headers and padding bytes.
+	private long getCopiedChunksSize()
+	{
+		long size = 0;
+
+		for(Chunk chunk : getCopiedChunks())
 		{
-			header[currentByte] = b;
-			currentByte++;
+			size += 8 + chunk.Size + (chunk.Size & 1);
 		}
 
-		// NumChannels
-		currentByte = 22;
-		short numChannels = properties.NumChannels;
-		byte[] numChannelsBytes = ByteHelper.GetShortBytes(numChannels, ByteOrder.LITTLE_ENDIAN);
-		for(byte b : numChannelsBytes)
+		return size;
+	}
+
+	// O(1)
+	// Get the size of the output of a filter for the whole input or range, or UnknownDataSize if it is only known once the data is filtered.
+	private long getOutputDataSize(AudioFilter filter)
+	{
+		if(filter instanceof RandomAccessFilter && dataLength != Long.MAX_VALUE)
 		{
-			header[currentByte] = b;
-			currentByte++;
+			long[] outputRange = getOutputRange(filter, dataLength / properties.getFrameSize());
+
+			return (outputRange[1] - outputRange[0]) * filter.getOutputProperties().getFrameSize();
 		}
 
+		return UnknownDataSize;
+	}
+
+	// O(1)
+	// Integer samples have a basic format chunk. Floating point samples have an extended format chunk,
+	// followed by a fact chunk with the number of frames, as required for formats other than PCM.
+	// Sizes which are unknown, or too large for their 32-bit fields, are written as 0xFFFFFFFF, so that readers take the data
+	// to the end of the file. Chunks copied after the data, and the padding byte of the data which precedes them,
+	// are counted in the RIFF chunk size.
+	private static byte[] GenerateFileSinkHeader(AudioProperties properties, long copiedChunksSize)
+	{
+		boolean floatingPoint = properties.isFloatingPoint();
+		int formatSize = floatingPoint ? 18 : 16;
+		int factSize = floatingPoint ? 12 : 0;
+
+		byte[] header = new byte[28 + formatSize + factSize];
+		PcmCodec intCodec = new PcmCodec(32, ByteOrder.LITTLE_ENDIAN);
+		PcmCodec shortCodec = new PcmCodec(16, ByteOrder.LITTLE_ENDIAN);
+
+		boolean unknownSize = properties.DataSize == UnknownDataSize || properties.DataSize > MaxChunkSize;
+		long chunksSize = copiedChunksSize > 0 ? (properties.DataSize & 1) + copiedChunksSize : 0;
+		long riffSize = header.length - 8 + properties.DataSize + chunksSize;
+
+		// ChunkID
+		PutChunkID(header, 0, "RIFF");
+
+		// ChunkSize
+		intCodec.put(header, 4, unknownSize || riffSize > MaxChunkSize ? UnknownDataSize : (int) riffSize);
+
+		// Format
+		PutChunkID(header, 8, "WAVE");
+
+		// Subchunk1ID
+		PutChunkID(header, 12, "fmt ");
+
+		// Subchunk1Size
+		intCodec.put(header, 16, formatSize);
+
+		// AudioFormat
+		shortCodec.put(header, 20, floatingPoint ? FormatFloat : FormatPCM);
+
+		// NumChannels
+		short numChannels = properties.NumChannels;
+		shortCodec.put(header, 22, numChannels);
+
 		// SampleRate
-		currentByte = 24;
 		int sampleRate = properties.SampleRate;
-		byte[] sampleRateBytes = ByteHelper.GetIntBytes(sampleRate, ByteOrder.LITTLE_ENDIAN);
-		for(byte b : sampleRateBytes)
-		{
-			header[currentByte] = b;
-			currentByte++;
-		}
+		intCodec.put(header, 24, sampleRate);
 
 		// ByteRate
-		currentByte = 28;
 		short bitsPerSample = properties.BitsPerSample;
-		int byteRate = sampleRate * numChannels * (bitsPerSample / 8);
-		byte[] byteRateBytes = ByteHelper.GetIntBytes(byteRate, ByteOrder.LITTLE_ENDIAN);
-		for(byte b : byteRateBytes)
-		{
-			header[currentByte] = b;
-			currentByte++;
-		}
+		intCodec.put(header, 28, sampleRate * numChannels * (bitsPerSample / 8));
 
 		// BlockAlign
-		currentByte = 32;
-		short blockAlign = (short) (numChannels * (bitsPerSample / 8));
-		byte[] blockAlignBytes = ByteHelper.GetShortBytes(blockAlign, ByteOrder.LITTLE_ENDIAN);
-		for(byte b : blockAlignBytes)
-		{
-			header[currentByte] = b;
-			currentByte++;
-		}
+		shortCodec.put(header, 32, (short) (numChannels * (bitsPerSample / 8)));
 
 		// BitsPerSample
-		currentByte = 34;
-		byte[] bitsPerSampleBytes = ByteHelper.GetShortBytes(bitsPerSample, ByteOrder.LITTLE_ENDIAN);
-		for(byte b : bitsPerSampleBytes)
+		shortCodec.put(header, 34, bitsPerSample);
+
+		int position = 36;
+
+		if(floatingPoint)
 		{
-			header[currentByte] = b;
-			currentByte++;
+			// cbSize, there is no extension
+			shortCodec.put(header, position, 0);
+
+			// FactID
+			PutChunkID(header, position + 2, "fact");
+
+			// FactSize
+			intCodec.put(header, position + 6, 4);
+
+			// SampleLength, the number of frames
+			intCodec.put(header, position + 10, unknownSize ? UnknownDataSize : properties.getFrameSize() == 0 ? 0 : (int) (properties.DataSize / properties.getFrameSize()));
+
+			position += formatSize - 16 + factSize;
 		}
 
 		// Subchunk2ID
-		currentByte = 36;
-		String subchunk2ID = "data";
-		byte[] subchunk2IDBytes = ByteHelper.GetASCIIBytes(subchunk2ID, ByteOrder.BIG_ENDIAN);
-		for(byte b : subchunk2IDBytes)
-		{
-			header[currentByte] = b;
-			currentByte++;
-		}
+		PutChunkID(header, position, "data");
 
 		// Subchunk2Size
-		currentByte = 40;
-		int subchunk2Size = properties.DataSize;
-		byte[] subchunk2SizeBytes = ByteHelper.GetIntBytes(subchunk2Size, ByteOrder.LITTLE_ENDIAN);
-		for(byte b : subchunk2SizeBytes)
-		{
-			header[currentByte] = b;
-			currentByte++;
-		}
+		intCodec.put(header, position + 4, unknownSize ? UnknownDataSize : (int) properties.DataSize);
 
 		return header;
 	}
+
+	private static void PutChunkID(byte[] header, int position, String id)
+	{
+		byte[] idBytes = ByteHelper.GetASCIIBytes(id, ByteOrder.BIG_ENDIAN);
+
+		System.arraycopy(idBytes, 0, header, position, idBytes.length);
+	}
 }
@@ -1,51 +1,77 @@
 package audioresampler.io;
 
-import java.io.BufferedOutputStream;
-import java.io.DataOutputStream;
 import java.io.FileNotFoundException;
 import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
 
 /**
  * A FileSink object writes the data sent to it to a file. If the file that
  * will we written has a specific header, the header should be sent to the file
  * as "data". The FileSink object has no knowledge of headers of tags. It only
  * writes bytes of data to a file.
- * 
+ *
+ * Data which is already written can be overwritten in place, for instance
+ * to patch sizes in a header once all of the data is known.
+ *
+ * A FileSink can also write to a stream, such as the standard output, in which
+ * case data is only appended, and the buffer is written to the stream whenever
+ * it is flushed, so that data reaches the reader as it is produced.
+ *
  * @author François Caron <francois.caron.7@ens.etsmtl.ca>; Raphaël Zumer <rzumer@gmail.com>
  */
 public class FileSink {
-	
-	/* The file's handler */
-	private DataOutputStream _writer;
+
+	/* Size of the buffer for small writes */
+	private static final int BufferSize = 1 << 16;
+
+	/* The file's handler, or the stream written to instead */
+	private OutputStream _stream;
+	private FileChannel _channel;
+	private ByteBuffer buffer;
 	private String location;
-	private int bytesWritten;
-	
+	private long bytesWritten;
+	private boolean open = true;
+
 	/**
 	 * Create a new FileSink to write data to. The specified path must exist or
 	 * instantiation will be cancelled. If a file with the same name exists,
 	 * the file will be replaced without any warnings.
-	 * 
+	 *
 	 * @param location The complete path to the file to create.
 	 * @throws FileNotFoundException If the path is not valid.
 	 */
 	public FileSink(String location) throws FileNotFoundException
 	{
 		this.location = location;
-		
-		try
-		{
-			/* open new handler to the file */
-			_writer = new DataOutputStream(
-						new BufferedOutputStream(
-							new FileOutputStream(location)));
-		}
-		catch (FileNotFoundException e)
+
+		/* open new handler to the file */
+		FileOutputStream stream = new FileOutputStream(location);
+		_stream = stream;
+		_channel = stream.getChannel();
+		buffer = ByteBuffer.allocate(BufferSize);
+	}
+
+	/**
+	 * Create a new FileSink writing to a stream, which is closed with the sink.
+	 * The sink has no location.
+	 *
+	 * @param stream The stream to write data to.
+	 */
+	public FileSink(OutputStream stream)
+	{
+		if(stream == null)
 		{
-			throw e;
+			throw new IllegalArgumentException();
 		}
+
+		_stream = stream;
+		buffer = ByteBuffer.allocate(BufferSize);
 	}
-	
+
 	/**
 	 * Save what was written to the file and close the handle on it.
 	 */
@@ -53,8 +79,14 @@ public class FileSink {
 	{
 		try
 		{
+			if(open)
+			{
+				open = false;
+				flush();
+			}
+
 			/* unreference the file */
-			_writer.close();
+			_stream.close();
 		}
 		catch (IOException e)
 		{
@@ -65,28 +97,129 @@ public class FileSink {
 	/**
 	 * Append data to the file.
 	 * @param data The data to write in the file.
+	 * @throws IOException If the data cannot be written.
 	 */
-	public void push(byte[] data)
+	public void push(byte[] data) throws IOException
 	{
-		try
+		push(data, 0, data.length);
+	}
+
+	/**
+	 * Append part of an array to the file.
+	 * @param data The array holding the data to write in the file.
+	 * @param offset The offset of the data in the array.
+	 * @param length The number of bytes to write.
+	 * @throws IOException If the data cannot be written.
+	 */
+	public void push(byte[] data, int offset, int length) throws IOException
+	{
+		if(length > buffer.remaining())
 		{
-			/* append data to the end of the file */
-			_writer.write(data);
-			bytesWritten += data.length;
+			flush();
 		}
-		catch (IOException e)
+
+		if(length >= BufferSize)
 		{
-			/* something went wrong */
+			/* large writes skip the buffer */
+			writeFully(ByteBuffer.wrap(data, offset, length), -1);
+		}
+		else
+		{
+			buffer.put(data, offset, length);
 		}
+
+		bytesWritten += length;
+	}
+
+	/**
+	 * Append a region of a source file to the file, without reading it
+	 * through the heap when both are files.
+	 * @param source The file to copy the region from.
+	 * @param position The offset of the region in the source file.
+	 * @param size The number of bytes in the region.
+	 * @throws IOException If the data cannot be read or written.
+	 */
+	public void transferFrom(FileSource source, long position, long size) throws IOException
+	{
+		flush();
+		source.transferTo(position, size, _channel != null ? _channel : Channels.newChannel(_stream));
+
+		bytesWritten += size;
 	}
-	
+
+	/**
+	 * Overwrite data at a position in the file, without moving the end of
+	 * the file where data is appended.
+	 * @param position The offset of the data in the file.
+	 * @param data The data to write in the file.
+	 * @throws IOException If the data cannot be written, or the sink is a stream.
+	 */
+	public void write(long position, byte[] data) throws IOException
+	{
+		if(_channel == null)
+		{
+			throw new IOException("Cannot overwrite data written to a stream");
+		}
+
+		flush();
+		writeFully(ByteBuffer.wrap(data), position);
+	}
+
+	/**
+	 * Write the buffered data to the file, or to the stream which is flushed.
+	 * @throws IOException If the data cannot be written.
+	 */
+	public void flush() throws IOException
+	{
+		buffer.flip();
+		writeFully(buffer, -1);
+		buffer.clear();
+
+		if(_channel == null)
+		{
+			_stream.flush();
+		}
+	}
+
+	/**
+	 * Get whether written data can be overwritten, which is only the case for files.
+	 */
+	public boolean isSeekable()
+	{
+		return _channel != null;
+	}
+
 	public String getLocation()
 	{
 		return location;
 	}
-	
-	public int getBytesWritten()
+
+	public long getBytesWritten()
 	{
 		return bytesWritten;
 	}
+
+	/* write all of the data, at the end of the file if the position is negative */
+	private void writeFully(ByteBuffer data, long position) throws IOException
+	{
+		if(_channel == null)
+		{
+			/* the data is in an array, which streams write at once */
+			_stream.write(data.array(), data.arrayOffset() + data.position(), data.remaining());
+			data.position(data.limit());
+			return;
+		}
+
+		while(data.hasRemaining())
+		{
+			if(position < 0)
+			{
+				_channel.write(data);
+			}
+			else
+			{
+				position += _channel.write(data, position);
+			}
+		}
+	}
 }
@@ -1,95 +1,315 @@
 package audioresampler.io;
 
-import java.io.BufferedInputStream;
-import java.io.DataInputStream;
-import java.io.FileInputStream;
 import java.io.FileNotFoundException;
 import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
 
 /**
  * A FileSource object opens a handle on a file and sends the data in
  * sequential order to a caller. When the data reaches the end-of-file marker,
  * it will return nothing.
- * 
+ *
+ * The file is memory mapped, and data is returned as read-only views of
+ * the mapping, so reading does not copy the file contents. Large files are
+ * mapped through a window which is moved forward as the file is read.
+ *
+ * A FileSource can also read a stream, such as the standard input, whose size
+ * is unknown until its end is reached. Stream data is read into a single buffer
+ * which is reused by each read, so views of a stream are only valid until the
+ * next read, and regions cannot be viewed out of order.
+ *
  * @author François Caron <francois.caron.7@ens.etsmtl.ca>; Raphaël Zumer <rzumer@gmail.com>
  */
 public class FileSource {
-	
+
+	/* The largest region of the file mapped at once */
+	private static final long MappingSize = 1L << 30;
+
+	/* The largest number of bytes of a stream discarded at once */
+	private static final int StreamSkipSize = 1 << 16;
+
 	/* The file's handler */
-	private DataInputStream _reader;
+	private RandomAccessFile _file;
+	private FileChannel _channel;
+	private long size;
+	private long position;
+
+	/* The current mapping window */
+	private MappedByteBuffer mapping;
+	private long mappingStart;
+
+	/* The stream read instead of a file, and the buffer of the last read */
+	private InputStream _stream;
+	private byte[] streamBuffer = new byte[0];
+	private boolean endOfStream;
 
 	/**
 	 * Create a new FileSource. The instantiation will be cancelled if the
 	 * specified path is not valid.
-	 * 
+	 *
 	 * @param location The complete path to the file
 	 * @throws FileNotFoundException If the path does not lead to a real file.
 	 */
 	public FileSource(String location) throws FileNotFoundException {
+		/* open the handler on the specified file */
+		_file = new RandomAccessFile(location, "r");
+		_channel = _file.getChannel();
+
 		try
 		{
-			/* open the handler on the specified file */
-			_reader = new DataInputStream(
-						new BufferedInputStream(
-							new FileInputStream(location)));
+			size = _channel.size();
 		}
-		catch (FileNotFoundException e)
+		catch (IOException e)
+		{
+			/* the file cannot be read, treat it as empty */
+			size = 0;
+		}
+	}
+
+	/**
+	 * Create a new FileSource reading a stream, which is closed with the source.
+	 *
+	 * @param stream The stream to read, from its current position.
+	 */
+	public FileSource(InputStream stream) {
+		if(stream == null)
 		{
-			/* the path is not valid */
-			throw e;
+			throw new IllegalArgumentException();
 		}
+
+		_stream = stream;
+		size = -1;
 	}
-	
+
 	/**
 	 * Unreference the file and close it cleanly.
 	 */
 	public void close() {
 		try
 		{
-			/* close the handler */
-			_reader.close();
+			/* close the handler, the mapping is released once unreferenced */
+			mapping = null;
+
+			if(_stream != null)
+			{
+				_stream.close();
+			}
+			else
+			{
+				_file.close();
+			}
 		}
 		catch (IOException e)
 		{
 			/* something went wrong */
 		}
 	}
-	
+
+	/**
+	 * Query the handler for a view of the next bytes of the file, without
+	 * copying them. If the size is larger than the amount left to read in
+	 * the file, the view contains the bytes left in the file.
+	 *
+	 * @param size The number of bytes to read.
+	 * @return A read-only view of the bytes read in the file, in big-endian order.
+	 * @throws IOException If the file cannot be mapped, or the stream cannot be read.
+	 */
+	public ByteBuffer read(int size) throws IOException {
+		if(_stream != null)
+		{
+			return readStream((int) Math.min(size, getBytesRemaining()));
+		}
+
+		ByteBuffer view = getView(position, (int) Math.min(size, getBytesRemaining()));
+		position += view.remaining();
+		return view;
+	}
+
+	/**
+	 * Query the handler for a view of a region of the file, without copying
+	 * it or moving the read position. Views can be requested from several
+	 * threads at once.
+	 *
+	 * @param position The offset of the region in the file.
+	 * @param size The number of bytes in the region, which must be in the file.
+	 * @return A read-only view of the region, in big-endian order.
+	 * @throws IOException If the file cannot be mapped.
+	 * @throws UnsupportedOperationException If the source is a stream.
+	 */
+	public synchronized ByteBuffer getView(long position, int size) throws IOException {
+		if(_stream != null)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		if(position < 0 || size < 0 || position + size > this.size)
+		{
+			throw new IndexOutOfBoundsException();
+		}
+
+		/* move the mapping window if the region is not entirely mapped */
+		if(mapping == null || position < mappingStart || position + size > mappingStart + mapping.capacity())
+		{
+			long mappingLength = Math.max(size, Math.min(MappingSize, this.size - position));
+			mapping = _channel.map(FileChannel.MapMode.READ_ONLY, position, mappingLength);
+			mappingStart = position;
+		}
+
+		int offset = (int) (position - mappingStart);
+		return mapping.asReadOnlyBuffer().position(offset).limit(offset + size).slice();
+	}
+
+	/**
+	 * Read a region of the file into a new buffer, without mapping it or
+	 * moving the read position. The region is cut at the end of the file.
+	 *
+	 * @param position The offset of the region in the file.
+	 * @param size The number of bytes to read.
+	 * @return A buffer of the bytes read, in big-endian order.
+	 * @throws IOException If the file cannot be read.
+	 * @throws UnsupportedOperationException If the source is a stream.
+	 */
+	public ByteBuffer read(long position, int size) throws IOException {
+		if(_stream != null)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		ByteBuffer buffer = ByteBuffer.allocate((int) Math.max(0, Math.min(size, this.size - position)));
+
+		while(buffer.hasRemaining() && _channel.read(buffer, position + buffer.position()) >= 0);
+
+		return buffer.flip();
+	}
+
+	/**
+	 * Copy a region of the file to a channel, without reading it through
+	 * the heap or moving the read position. The operating system copies
+	 * the region directly when it can.
+	 *
+	 * @param position The offset of the region in the file.
+	 * @param size The number of bytes in the region, which must be in the file.
+	 * @param target The channel to write the region to.
+	 * @throws IOException If the file cannot be read or the channel written.
+	 * @throws UnsupportedOperationException If the source is a stream.
+	 */
+	public void transferTo(long position, long size, WritableByteChannel target) throws IOException {
+		if(_stream != null)
+		{
+			throw new UnsupportedOperationException();
+		}
+
+		if(position < 0 || size < 0 || position + size > this.size)
+		{
+			throw new IndexOutOfBoundsException();
+		}
+
+		for(long end = position + size; position < end; )
+		{
+			position += _channel.transferTo(position, end - position, target);
+		}
+	}
+
+	/**
+	 * Get the size of the file, which is -1 for a stream.
+	 */
+	public long getSize() {
+		return size;
+	}
+
 	/**
 	 * Query the handler for some bytes from the file. If the size is larger
 	 * than the amount left to read in the file, it will return the number of
 	 * bytes left in the file.
-	 *  
+	 *
 	 * @param size The number of bytes to read.
 	 * @return An array of bytes read in the file.
 	 */
 	public byte[] pop(int size) {
 		try
 		{
-			/* create a new byte array for the number of bytes asked */
-			byte[] buffer = new byte[size];
-			
-			/* read the number of bytes asked for, or the amount left in the
-			 * file */
-			_reader.read(buffer);
+			/* copy the view of the bytes asked for, or the amount left in
+			 * the file */
+			ByteBuffer view = read(size);
+			byte[] buffer = new byte[view.remaining()];
+			view.get(buffer);
+
 			/* return what was read */
 			return buffer;
 		}
 		catch (IOException e)
 		{
-			/* something went wrong, or EOF reached */
+			/* something went wrong */
 			return null;
 		}
 	}
-	
-	public int getBytesRemaining() {
-		try
+
+	/**
+	 * Skip bytes of the file without reading them. The bytes of a stream
+	 * are read and discarded.
+	 *
+	 * @param size The number of bytes to skip, up to the end of the file.
+	 * @throws IOException If the stream cannot be read.
+	 */
+	public void skip(long size) throws IOException {
+		if(_stream != null)
 		{
-			return _reader.available();
+			/* discard the bytes by buffer sized reads, to bound memory use */
+			for(long remaining = size; remaining > 0 && !endOfStream; remaining -= StreamSkipSize)
+			{
+				readStream((int) Math.min(remaining, StreamSkipSize));
+			}
+
+			return;
 		}
-		catch (IOException e)
+
+		position += Math.max(0, Math.min(size, getBytesRemaining()));
+	}
+
+	/**
+	 * Get whether regions can be viewed out of order, which is only the case for files.
+	 */
+	public boolean isSeekable() {
+		return _stream == null;
+	}
+
+	public long getPosition() {
+		return position;
+	}
+
+	/**
+	 * Get the number of bytes left to read. The size of a stream is unknown until
+	 * its end is reached, so the bytes remaining are {@link Long#MAX_VALUE} until then.
+	 */
+	public long getBytesRemaining() {
+		if(_stream != null)
+		{
+			return endOfStream ? 0 : Long.MAX_VALUE;
+		}
+
+		return size - position;
+	}
+
+	/* read bytes of the stream into the buffer, which are fewer than asked only at its end */
+	private ByteBuffer readStream(int size) throws IOException {
+		if(streamBuffer.length < size)
 		{
-			return 0;
+			streamBuffer = new byte[size];
 		}
+
+		int length = _stream.readNBytes(streamBuffer, 0, size);
+		position += length;
+
+		if(length < size)
+		{
+			endOfStream = true;
+		}
+
+		return ByteBuffer.wrap(streamBuffer, 0, length).slice().asReadOnlyBuffer();
 	}
 }
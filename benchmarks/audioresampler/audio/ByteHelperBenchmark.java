@@ -0,0 +1,115 @@
+package audioresampler.audio;
+
+import java.nio.ByteBuffer;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import org.openjdk.jmh.infra.Blackhole;
+
+/**
+ * Measures the sample conversion routines of {@link ByteHelper} and the bulk conversions
+ * of {@link PcmCodec}, reported per sample.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(ByteHelperBenchmark.SampleCount)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+@SuppressWarnings("deprecation")
+public class ByteHelperBenchmark
+{
+	static final int SampleCount = 4096;
+
+	@Param({"8", "16", "24"})
+	public int bitsPerSample;
+
+	private AudioProperties properties;
+	private byte[] data;
+	private ByteBuffer buffer;
+	private byte[] output;
+	private int sampleSize;
+	private PcmCodec codec;
+	private float[] samples;
+
+	@Setup
+	public void setup()
+	{
+		properties = TestSignals.CreateProperties(44100, bitsPerSample, 1);
+		data = TestSignals.GenerateSignal(properties, SampleCount);
+		buffer = ByteBuffer.wrap(data).order(properties.ByteOrder);
+		output = new byte[data.length];
+		sampleSize = properties.getChannelSize();
+		codec = new PcmCodec(properties);
+		samples = new float[SampleCount];
+	}
+
+	@Benchmark
+	public void getIntFromBytes(Blackhole blackhole)
+	{
+		for(int i = 0; i < data.length; i += sampleSize)
+		{
+			blackhole.consume(ByteHelper.GetIntFromBytes(Arrays.copyOfRange(data, i, i + sampleSize), properties.ByteOrder));
+		}
+	}
+
+	@Benchmark
+	public void getSampleFromBuffer(Blackhole blackhole)
+	{
+		for(int i = 0; i < data.length; i += sampleSize)
+		{
+			blackhole.consume(ByteHelper.GetSampleFromBuffer(buffer, i, bitsPerSample));
+		}
+	}
+
+	@Benchmark
+	public byte[] putSampleBytes()
+	{
+		for(int i = 0; i < data.length; i += sampleSize)
+		{
+			ByteHelper.PutSampleBytes(output, i, i, properties.ByteOrder, sampleSize);
+		}
+
+		return output;
+	}
+
+	@Benchmark
+	public void getNumberBytes(Blackhole blackhole)
+	{
+		for(int i = 0; i < data.length; i += sampleSize)
+		{
+			blackhole.consume(ByteHelper.GetNumberBytes(i, properties.ByteOrder, sampleSize));
+		}
+	}
+
+	@Benchmark
+	public float[] pcmCodecDecode()
+	{
+		codec.decode(buffer, 0, sampleSize, SampleCount, samples, 0);
+
+		return samples;
+	}
+
+	@Benchmark
+	public byte[] pcmCodecEncode()
+	{
+		codec.encode(samples, 0, SampleCount, output, 0, sampleSize);
+
+		return output;
+	}
+}
@@ -0,0 +1,64 @@
+package audioresampler.audio;
+
+import java.nio.ByteBuffer;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Samples the time to push a small block of captured audio through the fast filter
+ * into a preallocated buffer, reported as a distribution with its percentiles.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+@BenchmarkMode(Mode.SampleTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class RealTimeBenchmark
+{
+	@Param({"5", "10", "20"})
+	public int blockMilliseconds;
+
+	@Param({"48000-44100", "48000-16000"})
+	public String rates;
+
+	private FastResamplingFilter resampler;
+	private ByteBuffer input;
+	private ByteBuffer output;
+
+	@Setup
+	public void setup()
+	{
+		String[] rate = rates.split("-");
+		AudioProperties properties = TestSignals.CreateProperties(Integer.parseInt(rate[0]), 16, 2);
+		int blockFrames = properties.SampleRate * blockMilliseconds / 1000;
+
+		resampler = new FastResamplingFilter(Integer.parseInt(rate[1]));
+		resampler.setInputProperties(properties);
+
+		input = ByteBuffer.wrap(TestSignals.GenerateSignal(properties, blockFrames));
+		output = ByteBuffer.allocate(resampler.getMaxOutputFrameCount(blockFrames) * properties.getFrameSize());
+	}
+
+	@Benchmark
+	public int push()
+	{
+		input.clear();
+		output.clear();
+
+		return resampler.push(input, output);
+	}
+}
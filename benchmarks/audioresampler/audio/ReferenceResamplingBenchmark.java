@@ -0,0 +1,66 @@
+package audioresampler.audio;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Measures the time to resample a segment of input with the original three-step filter,
+ * reported per input frame, as a baseline for the other filters.
+ * The filter does not support 24-bit input, and is given segments of one second
+ * as by the controller, since it fails on some shorter segments when upsampling.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(ReferenceResamplingBenchmark.SegmentFrames)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class ReferenceResamplingBenchmark
+{
+	static final int InSampleRate = 44100;
+	static final int SegmentFrames = InSampleRate;
+
+	@Param({"8000", "96000", "48000"})
+	public int outSampleRate;
+
+	@Param({"8", "16"})
+	public int bitsPerSample;
+
+	@Param({"1", "2", "6"})
+	public int channels;
+
+	private AudioFilter resampler;
+	private byte[] segment;
+
+	@Setup
+	public void setup()
+	{
+		AudioProperties properties = TestSignals.CreateProperties(InSampleRate, bitsPerSample, channels);
+
+		segment = TestSignals.GenerateSignal(properties, SegmentFrames);
+
+		resampler = new ResamplingFilter(outSampleRate);
+		resampler.setInputProperties(properties);
+	}
+
+	@Benchmark
+	public byte[] process()
+	{
+		return resampler.process(segment);
+	}
+}
@@ -0,0 +1,73 @@
+package audioresampler.audio;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import audioresampler.audio.PolyphaseResamplingFilter.Quality;
+
+/**
+ * Measures the time to resample a segment of input with the streaming filters,
+ * reported per input frame. Segments are processed in sequence, as by the controller.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@OperationsPerInvocation(ResamplingBenchmark.SegmentFrames)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class ResamplingBenchmark
+{
+	static final int SegmentFrames = 4096;
+
+	@Param({"fast", "low", "medium", "high"})
+	public String filter;
+
+	// Downsampling, upsampling and near-unity ratios.
+	@Param({"44100-8000", "44100-96000", "44100-48000"})
+	public String rates;
+
+	@Param({"8", "16", "24"})
+	public int bitsPerSample;
+
+	@Param({"1", "2", "6"})
+	public int channels;
+
+	private AudioFilter resampler;
+	private byte[] segment;
+
+	@Setup
+	public void setup()
+	{
+		String[] rate = rates.split("-");
+		AudioProperties properties = TestSignals.CreateProperties(Integer.parseInt(rate[0]), bitsPerSample, channels);
+
+		segment = TestSignals.GenerateSignal(properties, SegmentFrames);
+
+		int outSampleRate = Integer.parseInt(rate[1]);
+		resampler = filter.equals("fast") ?
+				new FastResamplingFilter(outSampleRate) :
+				new PolyphaseResamplingFilter(outSampleRate, Quality.valueOf(filter.toUpperCase()));
+		resampler.setInputProperties(properties);
+	}
+
+	@Benchmark
+	public byte[] process()
+	{
+		return resampler.process(segment);
+	}
+}
@@ -0,0 +1,100 @@
+package audioresampler.audio;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.nio.ByteOrder;
+import java.util.Random;
+
+import audioresampler.audio.AudioProperties.AudioFormat;
+
+/**
+ * Generates the audio used by the benchmarks, so that they run without media files.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+final class TestSignals
+{
+	private static final long Seed = 20160101;
+
+	static AudioProperties CreateProperties(int sampleRate, int bitsPerSample, int numChannels)
+	{
+		AudioProperties properties = new AudioProperties();
+		properties.Format = AudioFormat.WAVE_PCM;
+		properties.ByteOrder = ByteOrder.LITTLE_ENDIAN;
+		properties.SampleRate = sampleRate;
+		properties.BitsPerSample = (short) bitsPerSample;
+		properties.NumChannels = (short) numChannels;
+
+		return properties;
+	}
+
+	// O(n)
+	// Generates a different tone on each channel at half of full scale, with some noise,
+	// so that the filters process realistic values rather than silence.
+	static byte[] GenerateSignal(AudioProperties properties, int frameCount)
+	{
+		Random random = new Random(Seed);
+		int channelSize = properties.getChannelSize();
+		int maxValue = (1 << (properties.BitsPerSample - 1)) - 1;
+		byte[] data = new byte[frameCount * properties.getFrameSize()];
+
+		for(int i = 0, position = 0; i < frameCount; i++)
+		{
+			for(int channel = 0; channel < properties.NumChannels; channel++, position += channelSize)
+			{
+				double frequency = 220 * (channel + 1);
+				double value = 0.5 * Math.sin(2 * Math.PI * frequency * i / properties.SampleRate) + 0.01 * random.nextGaussian();
+				int sample = (int) Math.round(Math.max(-1, Math.min(1, value)) * maxValue);
+
+				if(properties.BitsPerSample == 8)
+				{
+					// 8-bit samples are unsigned.
+					sample += 128;
+				}
+
+				ByteHelper.PutSampleBytes(data, position, sample, properties.ByteOrder, channelSize);
+			}
+		}
+
+		properties.DataSize = data.length;
+
+		return data;
+	}
+
+	/**
+	 * Write a WAVE file with a generated signal to a temporary file, which is deleted on exit.
+	 */
+	static File GenerateWaveFile(AudioProperties properties, int frameCount) throws IOException
+	{
+		byte[] data = GenerateSignal(properties, frameCount);
+		File file = File.createTempFile("benchmark", ".wav");
+		file.deleteOnExit();
+
+		try(FileOutputStream stream = new FileOutputStream(file))
+		{
+			byte[] header = new byte[44];
+			PcmCodec intCodec = new PcmCodec(32, ByteOrder.LITTLE_ENDIAN);
+			PcmCodec shortCodec = new PcmCodec(16, ByteOrder.LITTLE_ENDIAN);
+
+			System.arraycopy(ByteHelper.GetASCIIBytes("RIFF", ByteOrder.BIG_ENDIAN), 0, header, 0, 4);
+			intCodec.put(header, 4, 36 + data.length);
+			System.arraycopy(ByteHelper.GetASCIIBytes("WAVE", ByteOrder.BIG_ENDIAN), 0, header, 8, 4);
+			System.arraycopy(ByteHelper.GetASCIIBytes("fmt ", ByteOrder.BIG_ENDIAN), 0, header, 12, 4);
+			intCodec.put(header, 16, 16);
+			shortCodec.put(header, 20, 1);
+			shortCodec.put(header, 22, properties.NumChannels);
+			intCodec.put(header, 24, properties.SampleRate);
+			intCodec.put(header, 28, properties.SampleRate * properties.getFrameSize());
+			shortCodec.put(header, 32, properties.getFrameSize());
+			shortCodec.put(header, 34, properties.BitsPerSample);
+			System.arraycopy(ByteHelper.GetASCIIBytes("data", ByteOrder.BIG_ENDIAN), 0, header, 36, 4);
+			intCodec.put(header, 40, data.length);
+
+			stream.write(header);
+			stream.write(data);
+		}
+
+		return file;
+	}
+}
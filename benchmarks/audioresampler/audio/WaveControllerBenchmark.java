@@ -0,0 +1,98 @@
+package audioresampler.audio;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import audioresampler.io.FileSink;
+import audioresampler.io.FileSource;
+
+/**
+ * Measures the WAVE header parsing, and the conversion of a whole file from
+ * a generated input file to an output file, reported per input frame.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Thread)
+public class WaveControllerBenchmark
+{
+	static final int FileFrames = 44100 * 10;
+
+	/**
+	 * The filter applied by the conversion, which does not apply to header parsing.
+	 */
+	@State(Scope.Thread)
+	public static class Conversion
+	{
+		@Param({"fast", "medium"})
+		public String filter;
+	}
+
+	@Param({"16", "24"})
+	public int bitsPerSample;
+
+	private File inputFile;
+	private File outputFile;
+
+	@Setup(Level.Trial)
+	public void setup() throws IOException
+	{
+		inputFile = TestSignals.GenerateWaveFile(TestSignals.CreateProperties(44100, bitsPerSample, 2), FileFrames);
+		outputFile = File.createTempFile("benchmark", ".wav");
+		outputFile.deleteOnExit();
+	}
+
+	@TearDown(Level.Trial)
+	public void tearDown()
+	{
+		inputFile.delete();
+		outputFile.delete();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(1)
+	public AudioProperties parseHeader() throws Exception
+	{
+		WaveController controller = new WaveController(new FileSource(inputFile.getPath()), new FileSink(outputFile.getPath()));
+		controller.close();
+
+		return controller.getProperties();
+	}
+
+	@Benchmark
+	@OperationsPerInvocation(FileFrames)
+	public AudioProperties convert(Conversion conversion) throws Exception
+	{
+		AudioFilter resampler = conversion.filter.equals("fast") ?
+				new FastResamplingFilter(48000) :
+				new PolyphaseResamplingFilter(48000, PolyphaseResamplingFilter.Quality.MEDIUM);
+
+		WaveController controller = new WaveController(new FileSource(inputFile.getPath()), new FileSink(outputFile.getPath()));
+		controller.setVerbose(false);
+		controller.applyFilter(resampler);
+		controller.saveToFile(outputFile.getPath());
+		controller.close();
+
+		return controller.getProperties();
+	}
+}
@@ -0,0 +1,60 @@
+package audioresampler.audio;
+
+import jdk.incubator.vector.FloatVector;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+/**
+ * The inner loops of the resampling filters using the incubating Vector API,
+ * selected by {@link SampleKernels#getInstance()} when it is available.
+ * This must be compiled and run with {@code --add-modules jdk.incubator.vector}.
+ *
+ * @author Raphaël Zumer <rzumer@gmail.com>
+ */
+final class VectorKernels extends SampleKernels
+{
+	private static final VectorSpecies<Float> FloatSpecies = FloatVector.SPECIES_PREFERRED;
+	private static final int MinLanes = 4; // Narrower vectors are not worth the reduction.
+
+	VectorKernels()
+	{
+		if(FloatSpecies.length() < MinLanes)
+		{
+			throw new UnsupportedOperationException();
+		}
+	}
+
+	// Interpolation is inherited from the scalar kernels: it needs a gather of two samples per frame,
+	// which is slower than the scalar loads on current runtimes, and the scalar results are exact.
+
+	// O(n)
+	@Override
+	double dotProduct(float[] coefficients, int coefficientOffset, float[] samples, int sampleOffset, int length)
+	{
+		int bound = FloatSpecies.loopBound(length);
+		FloatVector sum = FloatVector.zero(FloatSpecies);
+		int i = 0;
+
+		for(; i < bound; i += FloatSpecies.length())
+		{
+			FloatVector coefficient = FloatVector.fromArray(FloatSpecies, coefficients, coefficientOffset + i);
+
+			sum = coefficient.fma(FloatVector.fromArray(FloatSpecies, samples, sampleOffset + i), sum);
+		}
+
+		double result = sum.reduceLanes(VectorOperators.ADD);
+
+		for(; i < length; i++)
+		{
+			result += (double)coefficients[coefficientOffset + i] * samples[sampleOffset + i];
+		}
+
+		return result;
+	}
+
+	@Override
+	String getName()
+	{
+		return "vector (" + FloatSpecies.length() + " lanes)";
+	}
+}